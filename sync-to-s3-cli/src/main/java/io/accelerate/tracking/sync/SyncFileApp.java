@@ -4,6 +4,7 @@ import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
 import io.accelerate.tracking.sync.credentials.AWSSecretProperties;
+import io.accelerate.tracking.sync.sync.DirectoryPruneRule;
 import io.accelerate.tracking.sync.sync.Filters;
 import io.accelerate.tracking.sync.sync.RemoteSync;
 import io.accelerate.tracking.sync.sync.Source;
@@ -12,9 +13,12 @@ import io.accelerate.tracking.sync.sync.destination.DestinationOperationExceptio
 import io.accelerate.tracking.sync.sync.destination.S3BucketDestination;
 import io.accelerate.tracking.sync.sync.progress.UploadStatsProgressListener;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -30,9 +34,24 @@ public class SyncFileApp {
     @Parameter(names = {"--recursive", "-R"})
     private boolean recursive = false;
 
+    @Parameter(names = {"--watch", "-w"})
+    private boolean watch = false;
+
+    @Parameter(names = {"--journal"})
+    private String journalPath;
+
+    @Parameter(names = {"--max-upload-rate"}, description = "Maximum upload rate in KB/s, 0 for no limit")
+    private long maxUploadKilobytesPerSecond = 0;
+
     @Parameter(names = {"--filter"})
     private String regex = "^[0-9a-zA-Z\\_]+\\.mp4";
 
+    @Parameter(names = {"--prune"}, description = "Glob of the directories not to walk, can be repeated")
+    private List<String> prunedDirectories = new ArrayList<>();
+
+    @Parameter(names = {"--skip-hidden"}, description = "Do not walk the directories with a name starting with a dot")
+    private boolean skipHidden = false;
+
     private static final NumberFormat percentageFormatter = NumberFormat.getPercentInstance();
     private static final NumberFormat uploadSpeedFormatter = NumberFormat.getNumberInstance();
 
@@ -41,7 +60,7 @@ public class SyncFileApp {
         uploadSpeedFormatter.setMinimumFractionDigits(1);
     }
 
-    public static void main(String[] args) throws DestinationOperationException {
+    public static void main(String[] args) throws DestinationOperationException, IOException {
         S3BucketDestination.runSanityCheck();
 
         SyncFileApp app = new SyncFileApp();
@@ -51,11 +70,15 @@ public class SyncFileApp {
         app.run();
     }
 
-    private void run() throws DestinationOperationException {
+    private void run() throws DestinationOperationException, IOException {
         // Prepare
         Source source = buildSource();
         Destination destination = buildDestination();
         RemoteSync sync = new RemoteSync(source, destination);
+        if (journalPath != null) {
+            sync.setUploadJournal(Paths.get(journalPath));
+        }
+        sync.setMaxUploadBytesPerSecond(maxUploadKilobytesPerSecond * 1024);
 
         // Check destination
         destination.startS3SyncSession();
@@ -80,14 +103,26 @@ public class SyncFileApp {
         }, 0, 1000);
 
         // Run (blocking)
-        sync.run();
+        try (sync) {
+            if (watch) {
+                sync.watch();
+            } else {
+                sync.run();
+            }
+        }
         timer.cancel();
     }
 
     private Source buildSource() {
-        Filters filters = Filters.getBuilder()
-                .include(Filters.matches(regex))
-                .create();
+        Filters.Builder builder = Filters.getBuilder()
+                .include(Filters.matches(regex));
+        for (String glob : prunedDirectories) {
+            builder.prune(DirectoryPruneRule.glob(glob));
+        }
+        if (skipHidden) {
+            builder.prune(DirectoryPruneRule.hidden());
+        }
+        Filters filters = builder.create();
         return Source.getBuilder(Paths.get(dirPath))
                 .setFilters(filters)
                 .setRecursive(recursive)
@@ -1,19 +1,100 @@
 package io.accelerate.tracking.sync.helpers;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class ChecksumHelper {
 
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final int MAX_DIRECT_READ_BUFFERS = 16;
+
+    // Digests are reused by the thread instead of being looked up for every part
+    private static final ThreadLocal<Map<String, MessageDigest>> MESSAGE_DIGESTS = ThreadLocal.withInitial(HashMap::new);
+
+    // Shared by all the threads, a part on a virtual thread would otherwise allocate its own direct buffer
+    private static final Queue<ByteBuffer> DIRECT_READ_BUFFERS = new ConcurrentLinkedQueue<>();
+
+    private static final AtomicInteger directReadBufferCount = new AtomicInteger();
+
     private ChecksumHelper() {
     }
 
     public static String digest(byte[] bytes, String algorithm) {
+        return digest(bytes, 0, bytes.length, algorithm);
+    }
+
+    public static String digest(byte[] bytes, int offset, int length, String algorithm) {
+        MessageDigest messageDigest = getMessageDigest(algorithm);
+        messageDigest.update(bytes, offset, length);
+        return Base64.getEncoder().encodeToString(messageDigest.digest());
+    }
+
+    /**
+     * Digests a region of the file with positional reads through a small buffer,
+     * the region is never copied into the heap as a whole
+     */
+    public static String digest(FileChannel channel, long offset, long length, String algorithm) throws IOException {
+        MessageDigest messageDigest = getMessageDigest(algorithm);
+        ByteBuffer buffer = acquireReadBuffer();
+        try {
+            long position = offset;
+            long end = offset + length;
+            while (position < end) {
+                buffer.clear().limit((int) Math.min(READ_BUFFER_SIZE, end - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of file at " + position + ", expected " + end + " bytes");
+                }
+                position += read;
+                buffer.flip();
+                messageDigest.update(buffer);
+            }
+        } finally {
+            releaseReadBuffer(buffer);
+        }
+        return Base64.getEncoder().encodeToString(messageDigest.digest());
+    }
+
+    /**
+     * At most {@link #MAX_DIRECT_READ_BUFFERS} direct buffers are ever allocated,
+     * a thread that finds none free reads through a heap buffer
+     */
+    private static ByteBuffer acquireReadBuffer() {
+        ByteBuffer buffer = DIRECT_READ_BUFFERS.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+        if (directReadBufferCount.getAndUpdate(count -> Math.min(count + 1, MAX_DIRECT_READ_BUFFERS)) < MAX_DIRECT_READ_BUFFERS) {
+            return ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        }
+        return ByteBuffer.allocate(READ_BUFFER_SIZE);
+    }
+
+    private static void releaseReadBuffer(ByteBuffer buffer) {
+        if (buffer.isDirect()) {
+            DIRECT_READ_BUFFERS.offer(buffer);
+        }
+    }
+
+    private static MessageDigest getMessageDigest(String algorithm) {
+        MessageDigest messageDigest = MESSAGE_DIGESTS.get().computeIfAbsent(algorithm, ChecksumHelper::createMessageDigest);
+        messageDigest.reset();
+        return messageDigest;
+    }
+
+    private static MessageDigest createMessageDigest(String algorithm) {
         try {
-            MessageDigest messageDigest = MessageDigest.getInstance(algorithm);
-            byte[] digest = messageDigest.digest(bytes);
-            return Base64.getEncoder().encodeToString(digest);
+            return MessageDigest.getInstance(algorithm);
         } catch (NoSuchAlgorithmException ex) {
             throw new RuntimeException("Can't send multipart upload. Can't create " + algorithm + " digest. " + ex.getMessage(), ex);
         }
@@ -0,0 +1,47 @@
+package io.accelerate.tracking.sync.sync;
+
+/**
+ * Excludes a whole subtree of the source, the walk never enters the directories it matches.
+ *
+ * The depth of a directory is its number of names relative to the source folder,
+ * the directories directly in the source folder have a depth of 1.
+ */
+public class DirectoryPruneRule {
+
+    private final FileNameFilter nameFilter;
+
+    private final int maxDepth;
+
+    private DirectoryPruneRule(FileNameFilter nameFilter, int maxDepth) {
+        this.nameFilter = nameFilter;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Prunes the directories with a name matching the glob, see {@link Filters#glob(String)}
+     */
+    public static DirectoryPruneRule glob(String glob) {
+        return new DirectoryPruneRule(FileNameFilter.fromGlob(glob), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Prunes the hidden directories, the ones with a name starting with a dot
+     */
+    public static DirectoryPruneRule hidden() {
+        return new DirectoryPruneRule(new FileNameFilter(FileNameFilter.Kind.PREFIX, "."), Integer.MAX_VALUE);
+    }
+
+    /**
+     * The same rule, only applied to the directories up to the given depth
+     */
+    public DirectoryPruneRule upToDepth(int maxDepth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("Max depth should be >= 1");
+        }
+        return new DirectoryPruneRule(nameFilter, maxDepth);
+    }
+
+    boolean prunes(String directoryName, int depth) {
+        return depth <= maxDepth && nameFilter.matches(directoryName);
+    }
+}
@@ -0,0 +1,162 @@
+package io.accelerate.tracking.sync.sync;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Walks a folder with a task per directory on a fork/join pool.
+ *
+ * The accepted files are given to the consumer as soon as they are found, from the threads
+ * of the pool, so the consumer has to be thread safe. Relative paths are built by appending
+ * the names to the relative path of their directory, separated by '/'.
+ * Links are not followed, like {@link Files#find}. Directories pruned by the filters are not listed.
+ * The files of a directory are given once the directory is completely listed, after its lock files are
+ * recorded in the {@link LockIndex}, if any.
+ */
+class DirectoryWalker {
+    private static final Logger log = getLogger(DirectoryWalker.class);
+
+    // Listing directories mostly waits on the disk, more threads than cores keep it busy
+    private static final ForkJoinPool WALKER_POOL = new ForkJoinPool(Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+
+    private final Filters filters;
+
+    private final boolean recursive;
+
+    private final LockIndex lockIndex;
+
+    DirectoryWalker(Filters filters, boolean recursive) {
+        this(filters, recursive, null);
+    }
+
+    /**
+     * @param lockIndex records the lock files of the listed directories, null to ignore them
+     */
+    DirectoryWalker(Filters filters, boolean recursive, LockIndex lockIndex) {
+        this.filters = filters;
+        this.recursive = recursive;
+        this.lockIndex = lockIndex;
+    }
+
+    /**
+     * Gives the relative path of every accepted regular file to the consumer, returns once the whole folder is walked
+     *
+     * @throws IOException if the folder cannot be listed, subdirectories that cannot be listed are skipped
+     */
+    void walk(Path root, Consumer<String> consumer) throws IOException {
+        walk(root, "", 0, consumer);
+    }
+
+    /**
+     * Walks a directory of the folder
+     *
+     * @param relativeDirectory path of the directory relative to the folder, empty or ending with '/'
+     * @param depth of the directory in the folder, 0 for the folder itself
+     */
+    void walk(Path directory, String relativeDirectory, int depth, Consumer<String> consumer) throws IOException {
+        List<Path> subdirectories = new ArrayList<>();
+        listDirectory(directory, relativeDirectory, depth, consumer, subdirectories);
+        if (!subdirectories.isEmpty()) {
+            WALKER_POOL.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(createTasks(subdirectories, relativeDirectory, depth + 1, consumer));
+                }
+            });
+        }
+    }
+
+    private List<DirectoryTask> createTasks(List<Path> directories, String relativeParent, int depth, Consumer<String> consumer) {
+        List<DirectoryTask> tasks = new ArrayList<>(directories.size());
+        for (Path directory : directories) {
+            tasks.add(new DirectoryTask(directory, relativeParent + directory.getFileName() + "/", depth, consumer));
+        }
+        return tasks;
+    }
+
+    /**
+     * Gives the accepted files of the directory to the consumer and collects its subdirectories
+     * that are not pruned when recursive
+     */
+    private void listDirectory(Path directory, String relativeDirectory, int depth, Consumer<String> consumer, List<Path> subdirectories) throws IOException {
+        List<String> acceptedFiles = new ArrayList<>();
+        Set<String> lockedNames = new HashSet<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                BasicFileAttributes attributes;
+                try {
+                    attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException ex) {
+                    // Deleted since it was listed
+                    continue;
+                }
+                if (attributes.isDirectory()) {
+                    if (recursive && filters.acceptDirectory(entry, depth + 1)) {
+                        subdirectories.add(entry);
+                    }
+                } else if (attributes.isRegularFile()) {
+                    String name = entry.getFileName().toString();
+                    if (lockIndex != null && LockIndex.isLockFile(name)) {
+                        lockedNames.add(LockIndex.getLockedName(name));
+                    }
+                    if (filters.accept(entry)) {
+                        acceptedFiles.add(relativeDirectory + name);
+                    }
+                }
+            }
+        }
+        if (lockIndex != null) {
+            lockIndex.addDirectory(directory, lockedNames);
+        }
+        acceptedFiles.forEach(consumer);
+    }
+
+    // Tasks only run in the pool of the walk, they are never serialized
+    @SuppressWarnings("serial")
+    private class DirectoryTask extends RecursiveAction {
+
+        private final Path directory;
+
+        private final String relativeDirectory;
+
+        private final int depth;
+
+        private final Consumer<String> consumer;
+
+        DirectoryTask(Path directory, String relativeDirectory, int depth, Consumer<String> consumer) {
+            this.directory = directory;
+            this.relativeDirectory = relativeDirectory;
+            this.depth = depth;
+            this.consumer = consumer;
+        }
+
+        @Override
+        protected void compute() {
+            List<Path> subdirectories = new ArrayList<>();
+            try {
+                listDirectory(directory, relativeDirectory, depth, consumer, subdirectories);
+            } catch (IOException ex) {
+                log.warn("Cannot list " + directory + ", skipping it", ex);
+                return;
+            }
+            if (!subdirectories.isEmpty()) {
+                invokeAll(createTasks(subdirectories, relativeDirectory, depth + 1, consumer));
+            }
+        }
+    }
+}
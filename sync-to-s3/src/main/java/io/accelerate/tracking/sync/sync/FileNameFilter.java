@@ -0,0 +1,154 @@
+package io.accelerate.tracking.sync.sync;
+
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+
+/**
+ * A rule on the name of the file. {@link Filters} compiles the rules of each kind
+ * together, see {@link FileNameMatcher}, so they are cheap to evaluate in bulk.
+ */
+class FileNameFilter implements Filter {
+
+    enum Kind {
+        NAME,
+        PREFIX,
+        SUFFIX,
+        REGEX
+    }
+
+    private final Kind kind;
+
+    private final String value;
+
+    private final Pattern pattern;
+
+    FileNameFilter(Kind kind, String value) {
+        this.kind = kind;
+        this.value = value;
+        this.pattern = kind == Kind.REGEX ? Pattern.compile(value) : null;
+    }
+
+    /**
+     * A glob on the name: {@code *} and {@code ?} match any characters but '/', {@code [...]} matches
+     * one character of the class, {@code [!...]} one not in the class, {@code {a,b}} matches any of the
+     * alternatives and {@code \} escapes the next character. Globs that are a literal name, a literal
+     * with a leading {@code *} or with a trailing {@code *} become name, suffix or prefix rules.
+     */
+    static FileNameFilter fromGlob(String glob) {
+        int firstSpecial = indexOfSpecial(glob, 0);
+        if (firstSpecial < 0) {
+            return new FileNameFilter(Kind.NAME, glob);
+        }
+        if (firstSpecial == 0 && glob.charAt(0) == '*' && indexOfSpecial(glob, 1) < 0) {
+            return new FileNameFilter(Kind.SUFFIX, glob.substring(1));
+        }
+        if (firstSpecial == glob.length() - 1 && glob.charAt(firstSpecial) == '*') {
+            return new FileNameFilter(Kind.PREFIX, glob.substring(0, firstSpecial));
+        }
+        return new FileNameFilter(Kind.REGEX, globToRegex(glob));
+    }
+
+    private static int indexOfSpecial(String glob, int fromIndex) {
+        for (int i = fromIndex; i < glob.length(); i++) {
+            if ("*?[]{}\\".indexOf(glob.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        boolean inClass = false;
+        int alternatives = 0;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '\\':
+                    if (++i == glob.length()) {
+                        throw new IllegalArgumentException("Glob ends with an escape: " + glob);
+                    }
+                    appendLiteral(regex, glob.charAt(i));
+                    break;
+                case '*':
+                    regex.append(inClass ? "*" : "[^/]*");
+                    break;
+                case '?':
+                    regex.append(inClass ? "?" : "[^/]");
+                    break;
+                case '[':
+                    if (inClass) {
+                        throw new IllegalArgumentException("Nested class in glob: " + glob);
+                    }
+                    inClass = true;
+                    regex.append('[');
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '!') {
+                        regex.append('^');
+                        i++;
+                    }
+                    break;
+                case ']':
+                    inClass = false;
+                    regex.append(']');
+                    break;
+                case '{':
+                    alternatives++;
+                    regex.append("(?:");
+                    break;
+                case '}':
+                    if (alternatives == 0) {
+                        throw new IllegalArgumentException("Unbalanced braces in glob: " + glob);
+                    }
+                    alternatives--;
+                    regex.append(')');
+                    break;
+                case ',':
+                    regex.append(alternatives > 0 && !inClass ? "|" : ",");
+                    break;
+                default:
+                    if (inClass && c != '^' && c != '&') {
+                        regex.append(c);
+                    } else {
+                        appendLiteral(regex, c);
+                    }
+            }
+        }
+        if (inClass || alternatives > 0) {
+            throw new IllegalArgumentException("Unclosed class or braces in glob: " + glob);
+        }
+        return regex.toString();
+    }
+
+    private static void appendLiteral(StringBuilder regex, char c) {
+        if ("\\^$.|?*+()[]{}".indexOf(c) >= 0) {
+            regex.append('\\');
+        }
+        regex.append(c);
+    }
+
+    Kind getKind() {
+        return kind;
+    }
+
+    String getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean accept(Path path) {
+        return matches(path.getFileName().toString());
+    }
+
+    boolean matches(String name) {
+        switch (kind) {
+            case NAME:
+                return name.equals(value);
+            case PREFIX:
+                return name.startsWith(value);
+            case SUFFIX:
+                return name.endsWith(value);
+            default:
+                return pattern.matcher(name).matches();
+        }
+    }
+}
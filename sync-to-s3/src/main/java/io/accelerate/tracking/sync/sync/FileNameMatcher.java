@@ -0,0 +1,168 @@
+package io.accelerate.tracking.sync.sync;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A list of filters compiled into one matcher, it matches a file accepted by any of them.
+ *
+ * Names are looked up in a hash set, prefixes and suffixes in character tries, so their cost
+ * only depends on the length of the name. Regexes are joined into a single alternation when
+ * they have no back references or named groups. The cheap checks run first, other filters are called last.
+ */
+class FileNameMatcher {
+
+    private final Set<String> names = new HashSet<>();
+
+    private final CharTrie prefixes = new CharTrie();
+
+    // Holds the suffixes reversed
+    private final CharTrie suffixes = new CharTrie();
+
+    private final List<Pattern> patterns = new ArrayList<>();
+
+    private final List<Filter> otherFilters = new ArrayList<>();
+
+    private FileNameMatcher() {
+    }
+
+    static FileNameMatcher compile(List<Filter> filters) {
+        FileNameMatcher matcher = new FileNameMatcher();
+        List<String> joinableRegexes = new ArrayList<>();
+        for (Filter filter : filters) {
+            if (!(filter instanceof FileNameFilter)) {
+                matcher.otherFilters.add(filter);
+                continue;
+            }
+            FileNameFilter rule = (FileNameFilter) filter;
+            switch (rule.getKind()) {
+                case NAME:
+                    matcher.names.add(rule.getValue());
+                    break;
+                case PREFIX:
+                    matcher.prefixes.add(rule.getValue(), false);
+                    break;
+                case SUFFIX:
+                    matcher.suffixes.add(rule.getValue(), true);
+                    break;
+                default:
+                    if (canBeJoined(rule.getValue())) {
+                        joinableRegexes.add(rule.getValue());
+                    } else {
+                        matcher.patterns.add(Pattern.compile(rule.getValue()));
+                    }
+            }
+        }
+        if (joinableRegexes.size() == 1) {
+            matcher.patterns.add(0, Pattern.compile(joinableRegexes.get(0)));
+        } else if (!joinableRegexes.isEmpty()) {
+            matcher.patterns.add(0, Pattern.compile("(?:" + String.join(")|(?:", joinableRegexes) + ")"));
+        }
+        return matcher;
+    }
+
+    // Joined regexes renumber their groups, and a group name can only be defined once per pattern
+    private static boolean canBeJoined(String regex) {
+        if (regex.contains("(?<")) {
+            return false;
+        }
+        for (int i = 0; i < regex.length() - 1; i++) {
+            if (regex.charAt(i) == '\\') {
+                char next = regex.charAt(i + 1);
+                if ((next >= '1' && next <= '9') || next == 'k') {
+                    return false;
+                }
+                i++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param name the file name of the path, computed once by the caller
+     */
+    boolean matches(Path path, String name) {
+        if (names.contains(name) || prefixes.containsPrefixOf(name, false) || suffixes.containsPrefixOf(name, true)) {
+            return true;
+        }
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(name).matches()) {
+                return true;
+            }
+        }
+        for (Filter filter : otherFilters) {
+            if (filter.accept(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Trie of characters with the children of a node in small parallel arrays
+     */
+    private static class CharTrie {
+
+        private final Node root = new Node();
+
+        void add(String word, boolean reversed) {
+            Node node = root;
+            for (int i = 0; i < word.length(); i++) {
+                node = node.getOrAddChild(word.charAt(reversed ? word.length() - 1 - i : i));
+            }
+            node.terminal = true;
+        }
+
+        /**
+         * Whether a word of the trie starts the text, or ends it when reversed
+         */
+        boolean containsPrefixOf(String text, boolean reversed) {
+            Node node = root;
+            for (int i = 0; !node.terminal; i++) {
+                if (i == text.length()) {
+                    return false;
+                }
+                node = node.getChild(text.charAt(reversed ? text.length() - 1 - i : i));
+                if (node == null) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static class Node {
+
+            private char[] keys = new char[0];
+
+            private Node[] children = new Node[0];
+
+            private boolean terminal;
+
+            Node getChild(char key) {
+                for (int i = 0; i < keys.length; i++) {
+                    if (keys[i] == key) {
+                        return children[i];
+                    }
+                }
+                return null;
+            }
+
+            Node getOrAddChild(char key) {
+                Node child = getChild(key);
+                if (child == null) {
+                    child = new Node();
+                    keys = Arrays.copyOf(keys, keys.length + 1);
+                    children = Arrays.copyOf(children, children.length + 1);
+                    keys[keys.length - 1] = key;
+                    children[children.length - 1] = child;
+                }
+                return child;
+            }
+        }
+    }
+}
@@ -3,13 +3,25 @@ package io.accelerate.tracking.sync.sync;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * Includes and excludes files. The filters are compiled into a {@link FileNameMatcher}
+ * per list when the filters are created, and again after a filter is added.
+ * Directories matched by a {@link DirectoryPruneRule} are not walked at all.
+ */
 public class Filters {
 
     private final List<Filter> includes = new ArrayList<>();
 
     private final List<Filter> excludes = new ArrayList<>();
 
+    private final List<DirectoryPruneRule> pruneRules = new CopyOnWriteArrayList<>();
+
+    private volatile FileNameMatcher includeMatcher;
+
+    private volatile FileNameMatcher excludeMatcher;
+
     public static class Builder {
 
         private final Filters filters = new Filters();
@@ -18,6 +30,9 @@ public class Filters {
             if (filters.includes.isEmpty()) {
                 throw new RuntimeException("No filters for inclusion found.");
             }
+            // An invalid combination of filters fails here rather than during a scan
+            filters.getIncludeMatcher();
+            filters.getExcludeMatcher();
             return filters;
         }
 
@@ -30,6 +45,11 @@ public class Filters {
             filters.include(filter);
             return this;
         }
+
+        public final Builder prune(DirectoryPruneRule rule) {
+            filters.prune(rule);
+            return this;
+        }
     }
 
     private Filters() {
@@ -40,41 +60,96 @@ public class Filters {
         return new Builder();
     }
 
-    public final void exclude(Filter filter) {
+    public final synchronized void exclude(Filter filter) {
         excludes.add(filter);
+        excludeMatcher = null;
     }
 
-    public final void include(Filter filter) {
+    public final synchronized void include(Filter filter) {
         includes.add(filter);
+        includeMatcher = null;
     }
 
+    public final void prune(DirectoryPruneRule rule) {
+        pruneRules.add(rule);
+    }
+
+    /**
+     * Whether the files below the directory can be accepted
+     *
+     * @param depth of the directory relative to the source folder, see {@link DirectoryPruneRule}
+     */
+    public boolean acceptDirectory(Path directory, int depth) {
+        if (pruneRules.isEmpty()) {
+            return true;
+        }
+        String name = directory.getFileName().toString();
+        for (DirectoryPruneRule rule : pruneRules) {
+            if (rule.prunes(name, depth)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The file has to match an include, the excludes are only checked then
+     */
     public boolean accept(Path path) {
-        boolean accept = includes.stream()
-                .anyMatch(e -> e.accept(path));
+        String name = path.getFileName().toString();
+        return getIncludeMatcher().matches(path, name) && !getExcludeMatcher().matches(path, name);
+    }
 
-        boolean reject = excludes.stream()
-                .anyMatch(e -> e.accept(path));
+    private FileNameMatcher getIncludeMatcher() {
+        FileNameMatcher matcher = includeMatcher;
+        if (matcher == null) {
+            synchronized (this) {
+                matcher = includeMatcher;
+                if (matcher == null) {
+                    matcher = includeMatcher = FileNameMatcher.compile(includes);
+                }
+            }
+        }
+        return matcher;
+    }
 
-        return accept && !reject;
+    private FileNameMatcher getExcludeMatcher() {
+        FileNameMatcher matcher = excludeMatcher;
+        if (matcher == null) {
+            synchronized (this) {
+                matcher = excludeMatcher;
+                if (matcher == null) {
+                    matcher = excludeMatcher = FileNameMatcher.compile(excludes);
+                }
+            }
+        }
+        return matcher;
     }
 
     public static final Filter getDefaultLockFilter() {
-        return (Path path) -> path.getFileName().toString().endsWith(".lock");
+        return endsWith(".lock");
     }
 
     public static final Filter endsWith(String string) {
-        return (Path path) -> path.getFileName().toString().endsWith(string);
+        return new FileNameFilter(FileNameFilter.Kind.SUFFIX, string);
     }
 
     public static final Filter startsWith(String string) {
-        return (Path path) -> path.getFileName().toString().startsWith(string);
+        return new FileNameFilter(FileNameFilter.Kind.PREFIX, string);
     }
 
     public static final Filter matches(String regex) {
-        return (Path path) -> path.getFileName().toString().matches(regex);
+        return new FileNameFilter(FileNameFilter.Kind.REGEX, regex);
     }
 
     public static final Filter name(String name) {
-        return (Path path) -> path.getFileName().toString().equals(name);
+        return new FileNameFilter(FileNameFilter.Kind.NAME, name);
+    }
+
+    /**
+     * Matches the file name with a glob like {@code *.mp4} or {@code screen_{1,2}_*.mp4}
+     */
+    public static final Filter glob(String glob) {
+        return FileNameFilter.fromGlob(glob);
     }
 }
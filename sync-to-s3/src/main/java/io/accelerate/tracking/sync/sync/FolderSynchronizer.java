@@ -4,40 +4,251 @@ import io.accelerate.tracking.sync.sync.destination.Destination;
 import io.accelerate.tracking.sync.sync.destination.DestinationOperationException;
 import io.accelerate.tracking.sync.sync.progress.ProgressListener;
 import io.accelerate.tracking.sync.upload.FileUploadingService;
+import org.slf4j.Logger;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.slf4j.LoggerFactory.getLogger;
 
 class FolderSynchronizer {
+    private static final Logger log = getLogger(FolderSynchronizer.class);
+
+    // Files found but not checked against the destination yet
+    private static final int DISCOVERY_QUEUE_CAPACITY = 4096;
+
+    // Files checked against the destination at once, each check lists the keys added since the last one
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private static final long POLL_INTERVAL_MILLIS = 50;
 
     private final Source source;
 
     private final FileUploadingService fileUploadingService;
 
+    private int maxConcurrentFiles = 1;
+
     FolderSynchronizer(Source source, FileUploadingService fileUploadingService) {
         this.source = source;
         this.fileUploadingService = fileUploadingService;
     }
 
+    /**
+     * Number of files uploaded at the same time. The parts of all the files share
+     * the threads of the uploader, so they stay within its connection budget.
+     */
+    void setMaxConcurrentFiles(int maxConcurrentFiles) {
+        if (maxConcurrentFiles < 1) {
+            throw new IllegalArgumentException("Max concurrent files should be >= 1");
+        }
+        this.maxConcurrentFiles = maxConcurrentFiles;
+    }
+
+    /**
+     * Uploads the files the destination does not have, as they are found.
+     *
+     * The scan, the checks against the destination and the uploads run at the same time. The files
+     * waiting between them are bounded, so the first upload starts as soon as the first files are found,
+     * and the memory does not grow with the count of files. The lock files seen by the scan tell which
+     * files are still being written, in each batch they are uploaded after the finished ones.
+     */
     void synchronize() {
         Path folder = source.getPath();
-        List<String> paths = source.getFilesToUpload();
-        Destination destination = fileUploadingService.getDestination();
-        List<String> uploadable;
+        LockIndex lockIndex = new LockIndex();
+        BlockingQueue<String> discovered = new ArrayBlockingQueue<>(DISCOVERY_QUEUE_CAPACITY);
+        AtomicBoolean scanFinished = new AtomicBoolean();
+        AtomicBoolean stopped = new AtomicBoolean();
+        startScanner(discovered, lockIndex, scanFinished, stopped);
+
+        ExecutorService fileExecutor = Executors.newFixedThreadPool(maxConcurrentFiles);
+        Semaphore freeSlots = new Semaphore(maxConcurrentFiles);
+        AtomicReference<Throwable> uploadFailure = new AtomicReference<>();
         try {
-            uploadable = destination.filterUploadableFiles(paths);
+            boolean firstBatch = true;
+            List<String> batch;
+            while (uploadFailure.get() == null && !(batch = nextBatch(discovered, scanFinished)).isEmpty()) {
+                List<String> uploadable = firstBatch ? filterUploadableFiles(batch) : filterMoreUploadableFiles(batch);
+                firstBatch = false;
+                for (String upload : finishedFilesFirst(folder, uploadable, lockIndex)) {
+                    freeSlots.acquire();
+                    fileExecutor.execute(() -> {
+                        try {
+                            uploadFile(folder, upload, lockIndex);
+                        } catch (RuntimeException | Error ex) {
+                            uploadFailure.compareAndSet(null, ex);
+                        } finally {
+                            freeSlots.release();
+                        }
+                    });
+                }
+            }
+            freeSlots.acquire(maxConcurrentFiles);
         } catch (DestinationOperationException ex) {
-            uploadable = new ArrayList<>();
+            log.error("Cannot compare " + folder + " with the destination, the files not checked yet are not uploaded", ex);
+            freeSlots.acquireUninterruptibly(maxConcurrentFiles);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stopped.set(true);
+            fileExecutor.shutdownNow();
+        }
+        rethrow(uploadFailure.get());
+    }
+
+    /**
+     * Walks the source on its own thread, the walk waits while the queue is full
+     */
+    private void startScanner(BlockingQueue<String> discovered, LockIndex lockIndex, AtomicBoolean scanFinished, AtomicBoolean stopped) {
+        Thread scanner = new Thread(() -> {
+            try {
+                source.forEachFileToUpload(file -> enqueue(discovered, file, stopped), lockIndex);
+            } catch (IOException ex) {
+                log.warn("Cannot list " + source.getPath(), ex);
+            } catch (CancellationException ex) {
+                // The synchronization stopped before the end of the scan
+            } finally {
+                scanFinished.set(true);
+            }
+        }, "source-scanner");
+        scanner.setDaemon(true);
+        scanner.start();
+    }
+
+    private static void enqueue(BlockingQueue<String> discovered, String file, AtomicBoolean stopped) {
+        try {
+            while (!discovered.offer(file, POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (stopped.get()) {
+                    throw new CancellationException("Synchronization stopped");
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Scan interrupted");
+        }
+    }
+
+    /**
+     * Waits for the next file found, then takes the ones already waiting behind it.
+     * Empty once the scan is finished and every file was taken.
+     */
+    private static List<String> nextBatch(BlockingQueue<String> discovered, AtomicBoolean scanFinished) throws InterruptedException {
+        List<String> batch = new ArrayList<>();
+        while (batch.isEmpty()) {
+            // Read before polling, every file of a finished scan is already in the queue
+            boolean finished = scanFinished.get();
+            String file = discovered.poll(POLL_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            if (file != null) {
+                batch.add(file);
+            } else if (finished) {
+                return batch;
+            }
         }
+        discovered.drainTo(batch, MAX_BATCH_SIZE - 1);
+        return batch;
+    }
+
+    List<String> filterUploadableFiles(List<String> paths) throws DestinationOperationException {
+        Destination destination = fileUploadingService.getDestination();
+        return destination.filterUploadableFiles(paths);
+    }
+
+    private List<String> filterMoreUploadableFiles(List<String> paths) throws DestinationOperationException {
+        Destination destination = fileUploadingService.getDestination();
+        return destination.filterMoreUploadableFiles(paths);
+    }
+
+    /**
+     * Uploads the files, given relative to the source folder
+     *
+     * @return the files that were uploaded, the failed ones are left out
+     */
+    Set<String> upload(List<String> uploadable) {
         if (uploadable.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Path folder = source.getPath();
+        if (maxConcurrentFiles == 1 || uploadable.size() == 1) {
+            return uploadable.stream()
+                    .filter(upload -> uploadFile(folder, upload, null))
+                    .collect(Collectors.toSet());
+        }
+        return uploadConcurrently(folder, uploadable);
+    }
+
+    // Finished files can be committed, the locked ones only upload their full parts
+    private static List<String> finishedFilesFirst(Path folder, List<String> uploadable, LockIndex lockIndex) {
+        List<String> finished = new ArrayList<>(uploadable.size());
+        List<String> locked = new ArrayList<>();
+        for (String upload : uploadable) {
+            (lockIndex.isLocked(new File(folder.toFile(), upload)) ? locked : finished).add(upload);
+        }
+        finished.addAll(locked);
+        return finished;
+    }
+
+    private boolean uploadFile(Path folder, String upload, LockIndex lockIndex) {
+        File uploadFile = new File(folder.toFile(), upload);
+        if (lockIndex == null) {
+            return fileUploadingService.upload(uploadFile, upload);
+        }
+        return fileUploadingService.upload(uploadFile, upload, lockIndex);
+    }
+
+    /**
+     * Each file is uploaded from start to commit by a single task, so the order
+     * of its parts is the same as in a sequential upload
+     */
+    private Set<String> uploadConcurrently(Path folder, List<String> uploadable) {
+        Set<String> uploaded = new HashSet<>();
+        ExecutorService fileExecutor = Executors.newFixedThreadPool(Math.min(maxConcurrentFiles, uploadable.size()));
+        try {
+            List<Callable<Boolean>> tasks = uploadable.stream()
+                    .map(upload -> (Callable<Boolean>) () -> uploadFile(folder, upload, null))
+                    .collect(Collectors.toList());
+            List<Future<Boolean>> futures = fileExecutor.invokeAll(tasks);
+            for (int i = 0; i < futures.size(); i++) {
+                if (getOrRethrow(futures.get(i))) {
+                    uploaded.add(uploadable.get(i));
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            fileExecutor.shutdownNow();
+        }
+        return uploaded;
+    }
+
+    private static boolean getOrRethrow(Future<Boolean> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            rethrow(ex.getCause());
+            return false;
+        }
+    }
+
+    private static void rethrow(Throwable failure) {
+        if (failure == null) {
             return;
         }
-        uploadable.forEach(upload -> {
-                    File uploadFile = new File(folder.toFile(), upload);
-                    fileUploadingService.upload(uploadFile, upload);
-                });
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        throw new IllegalStateException(failure);
     }
 
     void setListener(ProgressListener listener) {
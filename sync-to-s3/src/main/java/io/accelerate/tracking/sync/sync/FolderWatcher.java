@@ -0,0 +1,314 @@
+package io.accelerate.tracking.sync.sync;
+
+import io.accelerate.tracking.sync.helpers.FileHelper;
+import io.accelerate.tracking.sync.sync.destination.DestinationOperationException;
+import io.accelerate.tracking.sync.upload.PartSizePolicy;
+import io.accelerate.tracking.sync.upload.UploadStateRegistry;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Keeps a folder synchronized by reacting to changes of its files.
+ *
+ * A file still being written (it has a lock file) is uploaded each time the part
+ * following the ones the destination already confirmed can be filled. It is committed once it has been seen without
+ * a lock file for a poll interval, so a file created just before its lock file is not committed.
+ * Changes are received from a {@link WatchService}, or found by polling the folder
+ * when the file system does not provide one.
+ */
+class FolderWatcher {
+    private static final Logger log = getLogger(FolderWatcher.class);
+
+    private final Source source;
+
+    private final FolderSynchronizer folderSynchronizer;
+
+    private final Duration pollInterval;
+
+    private final Duration resyncInterval;
+
+    private boolean watchServiceEnabled = true;
+
+    private UploadStateRegistry uploadStateRegistry = new UploadStateRegistry();
+
+    private PartSizePolicy partSizePolicy = PartSizePolicy.defaultPolicy();
+
+    private final Set<String> finishedFiles = new HashSet<>();
+
+    // Files seen without a lock file, by the time they were first seen unlocked
+    private final Map<String, Instant> unlockedSince = new HashMap<>();
+
+    private volatile boolean stopped;
+
+    /**
+     * @param pollInterval how long to wait for changes before checking if the watcher was stopped,
+     *                     or how often the folder is polled without a watch service
+     * @param resyncInterval how often the whole folder is compared with the destination again
+     */
+    FolderWatcher(Source source, FolderSynchronizer folderSynchronizer, Duration pollInterval, Duration resyncInterval) {
+        this.source = source;
+        this.folderSynchronizer = folderSynchronizer;
+        this.pollInterval = pollInterval;
+        this.resyncInterval = resyncInterval;
+    }
+
+    void setWatchServiceEnabled(boolean watchServiceEnabled) {
+        this.watchServiceEnabled = watchServiceEnabled;
+    }
+
+    /**
+     * Where the uploads of the files being written have got to, they should be the ones
+     * the uploading service is configured with
+     */
+    void setUploadProgress(UploadStateRegistry uploadStateRegistry, PartSizePolicy partSizePolicy) {
+        this.uploadStateRegistry = uploadStateRegistry;
+        this.partSizePolicy = partSizePolicy;
+    }
+
+    /**
+     * Blocks until {@link #stop()} is called or the thread is interrupted
+     */
+    void watch() {
+        stopped = false;
+        WatchService watchService = createWatchServiceOrNull();
+        try {
+            Instant nextResync = Instant.MIN;
+            while (!stopped && !Thread.currentThread().isInterrupted()) {
+                if (!Instant.now().isBefore(nextResync)) {
+                    resync(watchService);
+                    nextResync = Instant.now().plus(resyncInterval);
+                }
+                Set<String> changedFiles = watchService == null ? pollChangedFiles() : awaitChangedFiles(watchService);
+                uploadChangedFiles(changedFiles);
+            }
+        } finally {
+            closeQuietly(watchService);
+        }
+    }
+
+    void stop() {
+        stopped = true;
+    }
+
+    private WatchService createWatchServiceOrNull() {
+        if (!watchServiceEnabled) {
+            return null;
+        }
+        try {
+            return source.getPath().getFileSystem().newWatchService();
+        } catch (IOException | UnsupportedOperationException ex) {
+            log.warn("Watch service not available, polling " + source.getPath() + " every " + pollInterval, ex);
+            return null;
+        }
+    }
+
+    // ~~~ Changes
+
+    /**
+     * Compares the whole folder with the destination, it also catches up on changes a watch service missed
+     */
+    private void resync(WatchService watchService) {
+        if (watchService != null) {
+            registerDirectories(watchService, source.getPath());
+        }
+        List<String> files = source.getFilesToUpload();
+        List<String> uploadable;
+        try {
+            uploadable = folderSynchronizer.filterUploadableFiles(files);
+        } catch (DestinationOperationException ex) {
+            log.error("Cannot compare " + source.getPath() + " with the destination", ex);
+            return;
+        }
+        Set<String> uploadableSet = new HashSet<>(uploadable);
+        finishedFiles.clear();
+        files.stream()
+                .filter(file -> !uploadableSet.contains(file))
+                .forEach(this::markFinished);
+        uploadChangedFiles(uploadableSet);
+    }
+
+    private Set<String> pollChangedFiles() {
+        sleep(pollInterval);
+        return new HashSet<>(source.getFilesToUpload());
+    }
+
+    private Set<String> awaitChangedFiles(WatchService watchService) {
+        Set<String> changedFiles = new HashSet<>();
+        try {
+            WatchKey key = watchService.poll(pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+            while (key != null) {
+                collectChangedFiles(watchService, key, changedFiles);
+                key.reset();
+                key = watchService.poll();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException ex) {
+            stop();
+        }
+        return changedFiles;
+    }
+
+    private void collectChangedFiles(WatchService watchService, WatchKey key, Set<String> changedFiles) {
+        Path directory = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                changedFiles.addAll(source.getFilesToUpload());
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            if (Files.isDirectory(path)) {
+                if (source.isRecursive() && event.kind() == ENTRY_CREATE && source.acceptDirectory(path)) {
+                    // Files created before the directory was registered have no events
+                    registerDirectories(watchService, path);
+                    changedFiles.addAll(findAcceptedFiles(path));
+                }
+                continue;
+            }
+            Path file = toWatchedFile(path);
+            if (source.getFilters().accept(file)) {
+                changedFiles.add(source.getRelativePath(file));
+            }
+        }
+    }
+
+    // A change of the lock file is a change of the file it locks
+    private static Path toWatchedFile(Path path) {
+        String name = path.getFileName().toString();
+        if (LockIndex.isLockFile(name)) {
+            return path.resolveSibling(LockIndex.getLockedName(name));
+        }
+        return path;
+    }
+
+    private List<String> findAcceptedFiles(Path directory) {
+        List<String> files = Collections.synchronizedList(new ArrayList<>());
+        try {
+            source.forEachFileToUpload(directory, files::add);
+            return files;
+        } catch (IOException ex) {
+            log.warn("Cannot list new directory " + directory, ex);
+            return Collections.emptyList();
+        }
+    }
+
+    // Pruned directories are not watched
+    private void registerDirectories(WatchService watchService, Path root) {
+        try {
+            if (!source.isRecursive()) {
+                root.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                return;
+            }
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                    if (!directory.equals(root) && !source.acceptDirectory(directory)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException ex) {
+            log.warn("Cannot watch " + root, ex);
+        }
+    }
+
+    // ~~~ Uploads
+
+    /**
+     * Uploads the files that can fill their next part, or that have stayed unlocked for a poll interval.
+     * The unlocked files are checked again until they settle, whether they changed or not.
+     */
+    private void uploadChangedFiles(Set<String> changedFiles) {
+        Set<String> due = new HashSet<>();
+        Set<String> finishing = new HashSet<>();
+        Set<String> candidates = new HashSet<>(changedFiles);
+        candidates.addAll(unlockedSince.keySet());
+        Instant now = Instant.now();
+        for (String path : candidates) {
+            if (finishedFiles.contains(path)) {
+                unlockedSince.remove(path);
+                continue;
+            }
+            File file = new File(source.getPath().toFile(), path);
+            if (!file.isFile()) {
+                unlockedSince.remove(path);
+                continue;
+            }
+            if (!FileHelper.lockFileExists(file)) {
+                if (isSettled(path, now)) {
+                    finishing.add(path);
+                    due.add(path);
+                }
+            } else {
+                unlockedSince.remove(path);
+                if (canFillNextPart(path, file.length())) {
+                    due.add(path);
+                }
+            }
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+        // A failed file is uploaded again on its next change or at the next resync
+        Set<String> uploaded = folderSynchronizer.upload(new ArrayList<>(due));
+        for (String path : due) {
+            if (!uploaded.contains(path)) {
+                unlockedSince.remove(path);
+            } else if (finishing.contains(path)) {
+                markFinished(path);
+            }
+        }
+    }
+
+    // Data past the committed offset that does not fill the next part stays for a later upload
+    private boolean canFillNextPart(String path, long length) {
+        long committedOffset = uploadStateRegistry.getCommittedOffset(path);
+        int nextPartSize = partSizePolicy.getPartSize(uploadStateRegistry.getNextPartNumber(path));
+        return length - committedOffset >= nextPartSize;
+    }
+
+    // A lock file created right after its file shows up within a poll interval
+    private boolean isSettled(String path, Instant now) {
+        Instant since = unlockedSince.putIfAbsent(path, now);
+        return since != null && !now.isBefore(since.plus(pollInterval));
+    }
+
+    private void markFinished(String path) {
+        finishedFiles.add(path);
+        unlockedSince.remove(path);
+    }
+
+    // ~~~ Helpers
+
+    private void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration.toMillis());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeQuietly(WatchService watchService) {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException ex) {
+            log.warn("Cannot close watch service", ex);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package io.accelerate.tracking.sync.sync;
+
+import io.accelerate.tracking.sync.helpers.FileHelper;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The locked files of the directories seen by a scan of the source, a file is locked while its
+ * {@code .lock} file exists. The scan already lists the lock files, so looking them up here
+ * costs no file system call.
+ *
+ * It is a snapshot of the scan. A file of a directory the scan did not list is checked on disk.
+ * Uploads only trust a snapshot that says a file is locked, a lock created after the scan is not in it.
+ */
+public class LockIndex {
+
+    private static final String LOCK_FILE_EXTENSION = ".lock";
+
+    // Names of the locked files, by absolute directory
+    private final Map<Path, Set<String>> lockedNamesByDirectory = new ConcurrentHashMap<>();
+
+    /**
+     * Records the lock files of a directory once it is completely listed
+     *
+     * @param lockedNames names of the files that have a lock file
+     */
+    void addDirectory(Path directory, Set<String> lockedNames) {
+        lockedNamesByDirectory.put(directory.toAbsolutePath().normalize(), lockedNames.isEmpty() ? Collections.emptySet() : lockedNames);
+    }
+
+    static boolean isLockFile(String name) {
+        return name.endsWith(LOCK_FILE_EXTENSION);
+    }
+
+    /**
+     * Name of the file locked by a lock file
+     */
+    static String getLockedName(String lockFileName) {
+        return lockFileName.substring(0, lockFileName.length() - LOCK_FILE_EXTENSION.length());
+    }
+
+    public boolean isLocked(File file) {
+        Path absoluteFile = file.toPath().toAbsolutePath().normalize();
+        Set<String> lockedNames = lockedNamesByDirectory.get(absoluteFile.getParent());
+        if (lockedNames == null) {
+            return FileHelper.lockFileExists(file);
+        }
+        return lockedNames.contains(absoluteFile.getFileName().toString());
+    }
+
+    /**
+     * Count of locked files seen by the scan
+     */
+    public int getLockedFileCount() {
+        return lockedNamesByDirectory.values().stream().mapToInt(Set::size).sum();
+    }
+}
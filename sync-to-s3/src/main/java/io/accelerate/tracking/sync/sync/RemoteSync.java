@@ -3,10 +3,29 @@ package io.accelerate.tracking.sync.sync;
 import io.accelerate.tracking.sync.sync.destination.Destination;
 import io.accelerate.tracking.sync.sync.progress.DummyProgressListener;
 import io.accelerate.tracking.sync.sync.progress.ProgressListener;
+import io.accelerate.tracking.sync.upload.ConcurrentMultipartUploader;
 import io.accelerate.tracking.sync.upload.FileUploadingService;
+import io.accelerate.tracking.sync.upload.PartIntegrity;
+import io.accelerate.tracking.sync.upload.PartRetryPolicy;
+import io.accelerate.tracking.sync.upload.PartSizePolicy;
+import io.accelerate.tracking.sync.upload.UploadRateLimiter;
+import io.accelerate.tracking.sync.upload.UploadStateRegistry;
+import org.slf4j.Logger;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
 
-public class RemoteSync {
+import static org.slf4j.LoggerFactory.getLogger;
+
+
+public class RemoteSync implements AutoCloseable {
+    private static final Logger log = getLogger(RemoteSync.class);
+
+    private static final Duration DEFAULT_WATCH_POLL_INTERVAL = Duration.ofSeconds(1);
+
+    private static final Duration DEFAULT_WATCH_RESYNC_INTERVAL = Duration.ofMinutes(10);
 
     private final Source source;
 
@@ -18,6 +37,35 @@ public class RemoteSync {
 
     private ProgressListener listener;
 
+    private int maxPartsInFlight = 4;
+
+    private int uploadThreadCount = 4;
+
+    private int maxConcurrentFiles = 4;
+
+    // 0 uploads the parts on the pool of upload threads
+    private long virtualThreadMaxBytesInFlight = 0;
+
+    private ConcurrentMultipartUploader concurrentUploader;
+
+    private PartIntegrity partIntegrity = PartIntegrity.CONTENT_MD5;
+
+    private PartRetryPolicy partRetryPolicy = new PartRetryPolicy();
+
+    // Shared by the uploaders of all the runs, so a limit changed during a run applies at once
+    private final UploadRateLimiter uploadRateLimiter = new UploadRateLimiter();
+
+    private PartSizePolicy partSizePolicy = PartSizePolicy.defaultPolicy();
+
+    private Duration watchPollInterval = DEFAULT_WATCH_POLL_INTERVAL;
+
+    private volatile FolderWatcher folderWatcher;
+
+    // Kept between runs, so files uploaded again resume without listing the destination
+    private UploadStateRegistry uploadStateRegistry = new UploadStateRegistry();
+
+    private Path uploadJournalPath;
+
     public RemoteSync(Source source, Destination destination) {
         this.source = source;
         if (!this.source.isValidPath()) {
@@ -31,6 +79,89 @@ public class RemoteSync {
         this.listener = listener;
     }
 
+    /**
+     * Number of parts of a file that are uploaded concurrently
+     */
+    public void setMaxPartsInFlight(int maxPartsInFlight) {
+        this.maxPartsInFlight = maxPartsInFlight;
+    }
+
+    /**
+     * How uploaded parts are checked, see {@link PartIntegrity}
+     */
+    public void setPartIntegrity(PartIntegrity partIntegrity) {
+        this.partIntegrity = partIntegrity;
+    }
+
+    /**
+     * How a failed part is sent again, see {@link PartRetryPolicy}
+     */
+    public void setPartRetryPolicy(PartRetryPolicy partRetryPolicy) {
+        this.partRetryPolicy = partRetryPolicy;
+        if (concurrentUploader != null) {
+            concurrentUploader.setPartRetryPolicy(partRetryPolicy);
+        }
+    }
+
+    /**
+     * Limits the bytes per second sent by all the files, 0 removes the limit.
+     * Can be changed while files are uploading.
+     */
+    public void setMaxUploadBytesPerSecond(long maxUploadBytesPerSecond) {
+        uploadRateLimiter.setBytesPerSecond(maxUploadBytesPerSecond);
+    }
+
+    /**
+     * How large the parts of the uploaded files are, see {@link PartSizePolicy}
+     */
+    public void setPartSizePolicy(PartSizePolicy partSizePolicy) {
+        this.partSizePolicy = partSizePolicy;
+    }
+
+    /**
+     * Number of threads uploading parts, they are shared by all the files and kept between runs.
+     * Has to be set before the first run.
+     */
+    public void setUploadThreadCount(int uploadThreadCount) {
+        this.uploadThreadCount = uploadThreadCount;
+    }
+
+    /**
+     * Uploads every part on its own virtual thread instead of the pool of upload threads, with at most
+     * the given bytes of parts in flight. The parts in flight per file are still limited by
+     * {@link #setMaxPartsInFlight(int)}. Has to be set before the first run.
+     */
+    public void setVirtualThreadUploads(long maxBytesInFlight) {
+        this.virtualThreadMaxBytesInFlight = maxBytesInFlight;
+    }
+
+    /**
+     * Number of files uploaded at the same time, their parts share the upload threads
+     */
+    public void setMaxConcurrentFiles(int maxConcurrentFiles) {
+        this.maxConcurrentFiles = maxConcurrentFiles;
+    }
+
+    /**
+     * How often the folder is polled in watch mode when no watch service is available
+     */
+    public void setWatchPollInterval(Duration watchPollInterval) {
+        this.watchPollInterval = watchPollInterval;
+    }
+
+    /**
+     * Keeps the upload state in a journal file, so a restarted sync resumes its uploads
+     * without listing them on the destination. The journal should be outside the synchronized folder.
+     */
+    public void setUploadJournal(Path journalPath) throws IOException {
+        UploadStateRegistry previousRegistry = uploadStateRegistry;
+        uploadStateRegistry = UploadStateRegistry.open(journalPath);
+        uploadJournalPath = journalPath;
+        if (previousRegistry != null) {
+            previousRegistry.close();
+        }
+    }
+
     public void run() {
         buildUploadingService();
         buildFolderSynchronizer();
@@ -38,12 +169,89 @@ public class RemoteSync {
         folderSynchronizer.synchronize();
     }
 
+    /**
+     * Synchronizes the folder, then keeps uploading new data as soon as it is written.
+     * Blocks until {@link #stopWatching()} is called or the thread is interrupted.
+     */
+    public void watch() {
+        buildUploadingService();
+        buildFolderSynchronizer();
+        folderSynchronizer.setListener(listener);
+        folderWatcher = new FolderWatcher(source, folderSynchronizer, watchPollInterval, DEFAULT_WATCH_RESYNC_INTERVAL);
+        folderWatcher.setUploadProgress(uploadStateRegistry, partSizePolicy);
+        try {
+            folderWatcher.watch();
+        } finally {
+            folderWatcher = null;
+        }
+    }
+
+    public void stopWatching() {
+        FolderWatcher watcher = folderWatcher;
+        if (watcher != null) {
+            watcher.stop();
+        }
+    }
+
     private void buildUploadingService() {
-        fileUploadingService = new FileUploadingService(destination);
+        if (uploadStateRegistry == null) {
+            uploadStateRegistry = reopenUploadStateRegistry();
+        }
+        fileUploadingService = new FileUploadingService(destination, getConcurrentUploader());
+        fileUploadingService.setMaxPartsInFlight(maxPartsInFlight);
+        fileUploadingService.setPartIntegrity(partIntegrity);
+        fileUploadingService.setPartSizePolicy(partSizePolicy);
+        fileUploadingService.setUploadStateRegistry(uploadStateRegistry);
+    }
+
+    // A closed sync starts again from its journal, an in-memory state was lost with it
+    private UploadStateRegistry reopenUploadStateRegistry() {
+        if (uploadJournalPath == null) {
+            return new UploadStateRegistry();
+        }
+        try {
+            return UploadStateRegistry.open(uploadJournalPath);
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot open upload journal " + uploadJournalPath, ex);
+        }
     }
 
     private void buildFolderSynchronizer() {
-        Filters filters = source.getFilters();
         folderSynchronizer = new FolderSynchronizer(source, fileUploadingService);
+        folderSynchronizer.setMaxConcurrentFiles(maxConcurrentFiles);
+    }
+
+    private ConcurrentMultipartUploader getConcurrentUploader() {
+        if (concurrentUploader == null || concurrentUploader.isClosed()) {
+            concurrentUploader = virtualThreadMaxBytesInFlight > 0
+                    ? ConcurrentMultipartUploader.withVirtualThreads(destination, virtualThreadMaxBytesInFlight)
+                    : new ConcurrentMultipartUploader(destination, uploadThreadCount);
+            concurrentUploader.setPartRetryPolicy(partRetryPolicy);
+            concurrentUploader.setUploadRateLimiter(uploadRateLimiter);
+        }
+        return concurrentUploader;
+    }
+
+    /**
+     * Stops the upload threads and closes the upload journal, a later run starts new threads
+     * and opens the journal again
+     */
+    @Override
+    public void close() {
+        stopWatching();
+        if (concurrentUploader != null) {
+            concurrentUploader.close();
+            concurrentUploader = null;
+        }
+        if (uploadStateRegistry == null) {
+            return;
+        }
+        try {
+            uploadStateRegistry.close();
+        } catch (IOException ex) {
+            log.error("Cannot close upload journal", ex);
+        } finally {
+            uploadStateRegistry = null;
+        }
     }
 }
@@ -2,13 +2,12 @@ package io.accelerate.tracking.sync.sync;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.function.BiPredicate;
-import java.util.stream.Collectors;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
 
 public class Source {
 
@@ -69,20 +68,77 @@ public class Source {
         return file.isDirectory();
     }
 
+    /**
+     * Relative paths of the accepted files, sorted
+     */
     public List<String> getFilesToUpload() {
+        return getFilesToUpload(null);
+    }
+
+    /**
+     * Relative paths of the accepted files, sorted. The lock files seen on the way are recorded in the index.
+     */
+    public List<String> getFilesToUpload(LockIndex lockIndex) {
+        Queue<String> files = new ConcurrentLinkedQueue<>();
         try {
-            int maxDepth = isRecursive ? Integer.MAX_VALUE : 1;
-            File base = path.toFile();
-            BiPredicate<Path, BasicFileAttributes> matcher = (filePath, fileAttr) -> {
-                return fileAttr.isRegularFile() && filters.accept(filePath);
-            };
-            return Files.find(path, maxDepth, matcher)
-                    .map(filePath -> {
-                        return base.toURI().relativize(filePath.toFile().toURI()).getPath();
-                    })
-                    .collect(Collectors.toList());
+            new DirectoryWalker(filters, isRecursive, lockIndex).walk(path, files::add);
         } catch (IOException ex) {
             return new ArrayList<>();
         }
+        List<String> sortedFiles = new ArrayList<>(files);
+        sortedFiles.sort(null);
+        return sortedFiles;
+    }
+
+    /**
+     * Gives the relative path of each accepted file to the consumer as soon as it is found.
+     * Directories are walked in parallel, the consumer is called from several threads.
+     */
+    public void forEachFileToUpload(Consumer<String> consumer) throws IOException {
+        forEachFileToUpload(consumer, null);
+    }
+
+    /**
+     * Same as {@link #forEachFileToUpload(Consumer)}, the lock files of a directory are recorded
+     * in the index before its files are given to the consumer
+     */
+    public void forEachFileToUpload(Consumer<String> consumer, LockIndex lockIndex) throws IOException {
+        new DirectoryWalker(filters, isRecursive, lockIndex).walk(path, consumer);
+    }
+
+    /**
+     * Same as {@link #forEachFileToUpload(Consumer)} for a directory of the source, the paths stay relative to the source
+     */
+    void forEachFileToUpload(Path directory, Consumer<String> consumer) throws IOException {
+        String relativeDirectory = getRelativePath(directory);
+        int depth = relativeDirectory.isEmpty() ? 0 : relativeDirectory.split("/").length;
+        String prefix = depth == 0 ? "" : relativeDirectory + "/";
+        new DirectoryWalker(filters, isRecursive).walk(directory, prefix, depth, consumer);
+    }
+
+    /**
+     * Whether the files of the directory can be uploaded, it is not pruned and neither is any directory above it
+     */
+    public boolean acceptDirectory(Path directory) {
+        Path relativeDirectory = path.toAbsolutePath().normalize().relativize(directory.toAbsolutePath().normalize());
+        Path current = path;
+        for (int depth = 1; depth <= relativeDirectory.getNameCount(); depth++) {
+            current = current.resolve(relativeDirectory.getName(depth - 1));
+            if (!filters.acceptDirectory(current, depth)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Path of the file relative to the source folder, as used for the remote name
+     */
+    public String getRelativePath(Path filePath) {
+        Path relativePath = filePath.startsWith(path)
+                ? path.relativize(filePath)
+                : path.toAbsolutePath().normalize().relativize(filePath.toAbsolutePath().normalize());
+        String relative = relativePath.toString();
+        return File.separatorChar == '/' ? relative : relative.replace(File.separatorChar, '/');
     }
 }
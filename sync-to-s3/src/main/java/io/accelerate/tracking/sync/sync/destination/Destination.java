@@ -1,9 +1,9 @@
 package io.accelerate.tracking.sync.sync.destination;
 
 import com.amazonaws.services.s3.model.PartETag;
-import com.amazonaws.services.s3.model.PartListing;
 import com.amazonaws.services.s3.model.UploadPartRequest;
 import io.accelerate.tracking.sync.upload.MultipartUploadResult;
+import io.accelerate.tracking.sync.upload.UploadedParts;
 
 import java.util.List;
 
@@ -14,14 +14,27 @@ public interface Destination {
 
     List<String> filterUploadableFiles(List<String> paths) throws DestinationOperationException;
 
+    /**
+     * Filters another batch of the sync pass started by {@link #filterUploadableFiles(List)},
+     * what the destination listed for the pass is kept
+     */
+    default List<String> filterMoreUploadableFiles(List<String> paths) throws DestinationOperationException {
+        return filterUploadableFiles(paths);
+    }
+
     String initUploading(String remotePath) throws DestinationOperationException;
 
-    PartListing getAlreadyUploadedParts(String remotePath) throws DestinationOperationException;
+    UploadedParts getAlreadyUploadedParts(String remotePath) throws DestinationOperationException;
 
     MultipartUploadResult uploadMultiPart(UploadPartRequest request) throws DestinationOperationException;
 
     void commitMultipartUpload(String remotePath, List<PartETag> eTags, String uploadId) throws DestinationOperationException;
 
+    /**
+     * Discards the parts of an upload that cannot be completed
+     */
+    void abortMultipartUpload(String remotePath, String uploadId) throws DestinationOperationException;
+
     UploadPartRequest createUploadPartRequest(String remotePath) throws DestinationOperationException;
 
 }
@@ -2,6 +2,8 @@ package io.accelerate.tracking.sync.sync.destination;
 
 public class DestinationOperationException extends Exception {
 
+    private static final long serialVersionUID = 1L;
+
     public DestinationOperationException(String message) {
         super(message);
     }
@@ -0,0 +1,57 @@
+package io.accelerate.tracking.sync.sync.destination;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over all the parts of a multipart upload. ListParts returns at most
+ * 1000 parts per page, the next page is only fetched once the previous one is consumed.
+ */
+class PartListingIterator implements Iterator<PartSummary> {
+
+    private final AmazonS3 awsClient;
+
+    private final ListPartsRequest request;
+
+    private Iterator<PartSummary> pageParts = Collections.emptyIterator();
+
+    private boolean lastPageFetched;
+
+    PartListingIterator(AmazonS3 awsClient, ListPartsRequest request) {
+        this.awsClient = awsClient;
+        this.request = request;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!pageParts.hasNext() && !lastPageFetched) {
+            fetchNextPage();
+        }
+        return pageParts.hasNext();
+    }
+
+    @Override
+    public PartSummary next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return pageParts.next();
+    }
+
+    private void fetchNextPage() {
+        PartListing page = awsClient.listParts(request);
+        pageParts = page.getParts().iterator();
+        Integer nextPartNumberMarker = page.getNextPartNumberMarker();
+        if (page.isTruncated() && nextPartNumberMarker != null) {
+            request.setPartNumberMarker(nextPartNumberMarker);
+        } else {
+            lastPageFetched = true;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package io.accelerate.tracking.sync.sync.destination;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keys of the objects under the prefix, kept between sync passes.
+ *
+ * It is seeded by a full listing, then grows with the keys of our own completed uploads
+ * and with delta listings of the keys sorted after the last listed one.
+ * Keys created by others that sort before it are only seen once the index expires.
+ * It holds every key under the prefix, as the listing of a whole pass did before.
+ */
+class RemoteKeyIndex {
+
+    private final Set<String> keys = ConcurrentHashMap.newKeySet();
+
+    private final Duration ttl;
+
+    private Instant seededAt;
+
+    private String lastListedKey;
+
+    RemoteKeyIndex(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    synchronized boolean isExpired(Instant now) {
+        return seededAt == null || !now.isBefore(seededAt.plus(ttl));
+    }
+
+    synchronized void seed(Collection<String> listedKeys, Instant now) {
+        keys.clear();
+        lastListedKey = null;
+        seededAt = now;
+        addListed(listedKeys);
+    }
+
+    synchronized void addListed(Collection<String> listedKeys) {
+        keys.addAll(listedKeys);
+        for (String key : listedKeys) {
+            if (lastListedKey == null || key.compareTo(lastListedKey) > 0) {
+                lastListedKey = key;
+            }
+        }
+    }
+
+    /**
+     * Adds a key we uploaded ourselves, it does not move the start of the next delta listing
+     */
+    void add(String key) {
+        keys.add(key);
+    }
+
+    boolean contains(String key) {
+        return keys.contains(key);
+    }
+
+    synchronized String getLastListedKey() {
+        return lastListedKey;
+    }
+}
@@ -8,15 +8,29 @@ import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.*;
 import io.accelerate.tracking.sync.upload.MultipartUploadFinder;
 import io.accelerate.tracking.sync.upload.MultipartUploadResult;
+import io.accelerate.tracking.sync.upload.UploadedParts;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class S3BucketDestination implements Destination {
+    private static final Duration DEFAULT_REMOTE_INDEX_TTL = Duration.ofHours(1);
+
     private final AmazonS3 awsClient;
     private final String bucket;
     private final String prefix;
 
+    // Upload ids of the multipart uploads in progress, by key. Listed once per sync pass
+    private Map<String, String> multipartUploadIndex;
+
+    private volatile RemoteKeyIndex remoteKeyIndex = new RemoteKeyIndex(DEFAULT_REMOTE_INDEX_TTL);
+
+    // One listing at a time, the multipart index is not locked while the keys are listed
+    private final Object remoteKeyListingLock = new Object();
+
     public S3BucketDestination(AmazonS3 awsClient, String bucket, String prefix) {
         this.awsClient = awsClient;
         this.bucket = bucket;
@@ -25,6 +39,14 @@ public class S3BucketDestination implements Destination {
 
     // ~~~~ Public methods
 
+    /**
+     * How long the remote keys are trusted before the whole prefix is listed again,
+     * in between only the keys sorted after the last listed one are listed
+     */
+    public void setRemoteIndexTtl(Duration ttl) {
+        remoteKeyIndex = new RemoteKeyIndex(ttl);
+    }
+
     /**
      * If this method fails, stop everything
      */
@@ -66,32 +88,54 @@ public class S3BucketDestination implements Destination {
         }
     }
 
+    /**
+     * Called at the start of every sync pass, the multipart uploads are listed again by the pass
+     */
     @Override
     public List<String> filterUploadableFiles(List<String> paths) {
-        Set<String> existingItems = listAllObjects().stream()
-                .map(S3ObjectSummary::getKey)
-                .collect(Collectors.toSet());
+        invalidateMultipartUploadIndex();
+        return filterMoreUploadableFiles(paths);
+    }
+
+    @Override
+    public List<String> filterMoreUploadableFiles(List<String> paths) {
+        RemoteKeyIndex index = getUpToDateRemoteKeyIndex();
 
-        int trimLength = prefix.length();
         return paths.stream()
-                .map(path -> prefix + path)
-                .filter(path -> !existingItems.contains(path))
-                .map(path -> path.substring(trimLength))
+                .filter(path -> !index.contains(getFullPath(path)))
                 .collect(Collectors.toList());
     }
 
-    private Set<S3ObjectSummary> listAllObjects() {
-        ListObjectsRequest request = new ListObjectsRequest()
+    /**
+     * Batches filtered at the same time wait for each other, so a key is never listed twice
+     * and an expired index is seeded once
+     */
+    private RemoteKeyIndex getUpToDateRemoteKeyIndex() {
+        synchronized (remoteKeyListingLock) {
+            RemoteKeyIndex index = remoteKeyIndex;
+            Instant now = Instant.now();
+            if (index.isExpired(now)) {
+                index.seed(listKeys(null), now);
+            } else {
+                index.addListed(listKeys(index.getLastListedKey()));
+            }
+            return index;
+        }
+    }
+
+    private List<String> listKeys(String startAfter) {
+        ListObjectsV2Request request = new ListObjectsV2Request()
                 .withBucketName(bucket)
-                .withPrefix(prefix);
-        ObjectListing result;
-        Set<S3ObjectSummary> summaries = new HashSet<>();
+                .withPrefix(prefix)
+                .withStartAfter(startAfter);
+        ListObjectsV2Result result;
+        List<String> keys = new ArrayList<>();
         do {
-            result = awsClient.listObjects(request);
-            request.setMarker(result.getNextMarker());
-            summaries.addAll(result.getObjectSummaries());
+            result = awsClient.listObjectsV2(request);
+            request.setContinuationToken(result.getNextContinuationToken());
+            result.getObjectSummaries().forEach(summary -> keys.add(summary.getKey()));
         } while (result.isTruncated());
-        return summaries;
+        return keys;
     }
 
     @Override
@@ -100,6 +144,7 @@ public class S3BucketDestination implements Destination {
         try {
             InitiateMultipartUploadRequest request = new InitiateMultipartUploadRequest(bucket, path);
             InitiateMultipartUploadResult result = awsClient.initiateMultipartUpload(request);
+            indexMultipartUpload(path, result.getUploadId());
             return result.getUploadId();
         } catch (AmazonS3Exception ex) {
             throw new DestinationOperationException("Fail to initialize uploading process: " + path, ex);
@@ -107,13 +152,23 @@ public class S3BucketDestination implements Destination {
     }
 
     @Override
-    public PartListing getAlreadyUploadedParts(String remotePath) throws DestinationOperationException {
-        MultipartUpload multipartUpload = findOrNull(remotePath);
-
-        return Optional.ofNullable(multipartUpload)
-                .map(MultipartUpload::getUploadId)
-                .map(id -> getPartListing(remotePath, id))
-                .orElse(null);
+    public UploadedParts getAlreadyUploadedParts(String remotePath) throws DestinationOperationException {
+        Map<String, String> index = getMultipartUploadIndex();
+        String path = getFullPath(remotePath);
+        String uploadId = index.get(path);
+        if (uploadId == null) {
+            return null;
+        }
+        try {
+            return getUploadedParts(remotePath, uploadId);
+        } catch (AmazonS3Exception ex) {
+            if (ex.getStatusCode() == 404) {
+                // Completed or aborted since the index was listed
+                index.remove(path, uploadId);
+                return null;
+            }
+            throw new DestinationOperationException("Failed to list parts of upload: " + path, ex);
+        }
     }
 
     @Override
@@ -136,6 +191,19 @@ public class S3BucketDestination implements Destination {
                 eTags
         );
         completeMultipartUpload(request);
+        unindexMultipartUpload(request.getKey(), uploadId);
+        remoteKeyIndex.add(request.getKey());
+    }
+
+    @Override
+    public void abortMultipartUpload(String remotePath, String uploadId) throws DestinationOperationException {
+        String path = getFullPath(remotePath);
+        try {
+            awsClient.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, path, uploadId));
+        } catch (AmazonS3Exception ex) {
+            throw new DestinationOperationException("Failed to abort multipart upload: " + path, ex);
+        }
+        unindexMultipartUpload(path, uploadId);
     }
 
     @Override
@@ -154,23 +222,40 @@ public class S3BucketDestination implements Destination {
         }
     }
 
-    private MultipartUpload findOrNull(String remotePath) throws DestinationOperationException {
-        MultipartUploadFinder finder = new MultipartUploadFinder(awsClient, bucket, prefix);
-        List<MultipartUpload> uploads = finder.getAlreadyStartedMultipartUploads();
-        return uploads.stream()
-                .filter(upload -> upload.getKey().equals(getFullPath(remotePath)))
-                .findAny()
-                .orElse(null);
+    private synchronized Map<String, String> getMultipartUploadIndex() throws DestinationOperationException {
+        if (multipartUploadIndex == null) {
+            MultipartUploadFinder finder = new MultipartUploadFinder(awsClient, bucket, prefix);
+            Map<String, String> index = new ConcurrentHashMap<>();
+            finder.getAlreadyStartedMultipartUploads()
+                    .forEach(upload -> index.putIfAbsent(upload.getKey(), upload.getUploadId()));
+            multipartUploadIndex = index;
+        }
+        return multipartUploadIndex;
     }
-    // ~~~ Part Helpers
 
-    private PartListing getPartListing(String remotePath, String uploadId) {
-        ListPartsRequest request = new ListPartsRequest(bucket, getFullPath(remotePath), uploadId);
-        return listParts(request);
+    private synchronized void indexMultipartUpload(String path, String uploadId) {
+        if (multipartUploadIndex != null) {
+            multipartUploadIndex.put(path, uploadId);
+        }
+    }
+
+    private synchronized void unindexMultipartUpload(String path, String uploadId) {
+        if (multipartUploadIndex != null) {
+            multipartUploadIndex.remove(path, uploadId);
+        }
     }
 
-    private PartListing listParts(ListPartsRequest request) {
-        return awsClient.listParts(request);
+    private synchronized void invalidateMultipartUploadIndex() {
+        multipartUploadIndex = null;
+    }
+    // ~~~ Part Helpers
+
+    /**
+     * Folds the pages of parts as they are fetched, only one page of parts is held at a time
+     */
+    private UploadedParts getUploadedParts(String remotePath, String uploadId) {
+        ListPartsRequest request = new ListPartsRequest(bucket, getFullPath(remotePath), uploadId);
+        return UploadedParts.fromParts(uploadId, new PartListingIterator(awsClient, request));
     }
     // ~~~ Path helpers
 
@@ -1,8 +1,13 @@
 package io.accelerate.tracking.sync.sync.progress;
 
 import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
 public class UploadStatsProgressListener implements ProgressListener {
@@ -50,34 +55,50 @@ public class UploadStatsProgressListener implements ProgressListener {
         }
     }
 
-    private FileUploadStat fileUploadStat = null;
+    // Files can be uploaded concurrently, the stats are kept per upload
+    private final Map<String, FileUploadStat> statsByUploadId = new ConcurrentHashMap<>();
+
+    private final Map<File, String> uploadIdsByFile = new ConcurrentHashMap<>();
 
     @Override
     public void uploadFileStarted(File file, String uploadId, long uploadedByte) {
-        fileUploadStat = new FileUploadStat(file.length(), uploadedByte);
+        statsByUploadId.put(uploadId, new FileUploadStat(file.length(), uploadedByte));
+        uploadIdsByFile.put(file, uploadId);
     }
 
     @Override
     public void uploadFileProgress(String uploadId, long uploadedByte) {
-        fileUploadStat.incrementUploadedSize(uploadedByte);
+        FileUploadStat stat = statsByUploadId.get(uploadId);
+        if (stat != null) {
+            stat.incrementUploadedSize(uploadedByte);
+        }
     }
 
     @Override
     public void uploadFileFinished(File file) {
-        fileUploadStat = null;
+        String uploadId = uploadIdsByFile.remove(file);
+        if (uploadId != null) {
+            statsByUploadId.remove(uploadId);
+        }
     }
 
 
     //~~~~ Getters
 
 
+    /**
+     * Stats of the most recently started upload that is still running
+     */
     public Optional<FileUploadStat> getCurrentStats() {
-        //TODO Improve this class so that it can handle multiple uploads simultaneously
-        return Optional.ofNullable(fileUploadStat);
+        return statsByUploadId.values().stream()
+                .max(Comparator.comparingLong(stat -> stat.startTimestamp));
     }
 
+    public Collection<FileUploadStat> getAllCurrentStats() {
+        return Collections.unmodifiableCollection(statsByUploadId.values());
+    }
 
     public boolean isCurrentlyUploading() {
-        return fileUploadStat != null;
+        return !statsByUploadId.isEmpty();
     }
 }
@@ -0,0 +1,50 @@
+package io.accelerate.tracking.sync.upload;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Limits the bytes of the parts being uploaded at the same time.
+ *
+ * Permits are counted in kilobytes so the budget can exceed 2 GB. A part larger
+ * than the whole budget takes all of it, so it still gets uploaded, alone.
+ */
+class BytesInFlightLimiter {
+
+    private static final int BYTES_PER_PERMIT = 1024;
+
+    private final int maxPermits;
+
+    private final Semaphore permits;
+
+    BytesInFlightLimiter(long maxBytesInFlight) {
+        if (maxBytesInFlight < BYTES_PER_PERMIT) {
+            throw new IllegalArgumentException("Max bytes in flight should be >= " + BYTES_PER_PERMIT);
+        }
+        this.maxPermits = (int) Math.min(maxBytesInFlight / BYTES_PER_PERMIT, Integer.MAX_VALUE);
+        this.permits = new Semaphore(maxPermits, true);
+    }
+
+    /**
+     * Blocks until the bytes fit in the budget
+     *
+     * @return the permits to give back with {@link #release(int)}
+     */
+    int acquire(long bytes) throws InterruptedException {
+        int needed = permitsFor(bytes);
+        permits.acquire(needed);
+        return needed;
+    }
+
+    void release(int acquired) {
+        permits.release(acquired);
+    }
+
+    long availableBytes() {
+        return (long) permits.availablePermits() * BYTES_PER_PERMIT;
+    }
+
+    private int permitsFor(long bytes) {
+        long needed = (bytes + BYTES_PER_PERMIT - 1) / BYTES_PER_PERMIT;
+        return (int) Math.max(1, Math.min(needed, maxPermits));
+    }
+}
@@ -3,10 +3,29 @@ package io.accelerate.tracking.sync.upload;
 import com.amazonaws.services.s3.model.UploadPartRequest;
 import io.accelerate.tracking.sync.sync.destination.Destination;
 import io.accelerate.tracking.sync.sync.destination.DestinationOperationException;
+import org.slf4j.Logger;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
-public class ConcurrentMultipartUploader {
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Pool of threads uploading parts. It is meant to be long-lived and shared
+ * by the uploads of many files, it is released by {@link #close()}.
+ *
+ * Each part is sent on a thread of the pool, either a fixed pool of platform threads,
+ * or a virtual thread per part with a budget of bytes in flight, see {@link #withVirtualThreads}.
+ * The bytes sent by all the parts can be limited by an {@link UploadRateLimiter}.
+ */
+public class ConcurrentMultipartUploader implements Closeable {
+    private static final Logger log = getLogger(ConcurrentMultipartUploader.class);
 
     private static final int DEFAULT_THREAD_COUNT = 4;
 
@@ -16,22 +35,95 @@ public class ConcurrentMultipartUploader {
 
     private final ExecutorService executorService;
 
+    // Parts being sent or waiting to be sent again
+    private final Set<CompletableFuture<MultipartUploadResult>> pendingParts = ConcurrentHashMap.newKeySet();
+
+    private final int threadCount;
+
+    // Only with virtual threads, a fixed pool is already limited by its threads
+    private final BytesInFlightLimiter bytesInFlightLimiter;
+
+    private volatile PartRetryPolicy partRetryPolicy = new PartRetryPolicy();
+
+    private volatile UploadRateLimiter uploadRateLimiter = new UploadRateLimiter();
+
     public ConcurrentMultipartUploader(Destination destination) {
         this(destination, DEFAULT_THREAD_COUNT);
     }
 
-    ConcurrentMultipartUploader(Destination destination, int threadCount) {
+    public ConcurrentMultipartUploader(Destination destination, int threadCount) {
+        this(destination, createFixedThreadPool(threadCount), threadCount, null);
+    }
+
+    private ConcurrentMultipartUploader(Destination destination, ExecutorService executorService, int threadCount, BytesInFlightLimiter bytesInFlightLimiter) {
+        this.threadCount = threadCount;
+        this.executorService = executorService;
+        this.bytesInFlightLimiter = bytesInFlightLimiter;
         this.destination = destination;
+    }
+
+    /**
+     * Uploads every part on its own virtual thread. The parts waiting on the network hold no
+     * platform thread, so the concurrency is only limited by the bytes of the parts in flight.
+     *
+     * @param maxBytesInFlight total size of the parts uploaded at the same time
+     */
+    public static ConcurrentMultipartUploader withVirtualThreads(Destination destination, long maxBytesInFlight) {
+        BytesInFlightLimiter limiter = new BytesInFlightLimiter(maxBytesInFlight);
+        ThreadFactory threadFactory = Thread.ofVirtual().name("part-uploader-", 1).factory();
+        return new ConcurrentMultipartUploader(destination, Executors.newThreadPerTaskExecutor(threadFactory), 0, limiter);
+    }
+
+    private static ExecutorService createFixedThreadPool(int threadCount) {
         if (threadCount < 1) {
             throw new IllegalArgumentException("Thread count should be >= 1");
         }
-        executorService = Executors.newFixedThreadPool(threadCount);
+        return Executors.newFixedThreadPool(threadCount, createThreadFactory());
+    }
+
+    // Daemon threads, an uploader that is never closed does not keep the JVM alive
+    private static ThreadFactory createThreadFactory() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "part-uploader-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 
     public ExecutorService getExecutorService() {
         return executorService;
     }
 
+    /**
+     * Size of the pool of platform threads, 0 with virtual threads
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * How a failed part is sent again, see {@link PartRetryPolicy}
+     */
+    public void setPartRetryPolicy(PartRetryPolicy partRetryPolicy) {
+        this.partRetryPolicy = partRetryPolicy;
+    }
+
+    public PartRetryPolicy getPartRetryPolicy() {
+        return partRetryPolicy;
+    }
+
+    /**
+     * Limits the bytes per second sent by the parts, the same limiter can be shared by several uploaders
+     */
+    public void setUploadRateLimiter(UploadRateLimiter uploadRateLimiter) {
+        this.uploadRateLimiter = uploadRateLimiter;
+    }
+
+    public UploadRateLimiter getUploadRateLimiter() {
+        return uploadRateLimiter;
+    }
+
     void shutdownAndAwaitTermination() throws DestinationOperationException {
         ExecutorService service = getExecutorService();
         service.shutdown();
@@ -42,18 +134,153 @@ public class ConcurrentMultipartUploader {
         }
     }
 
-    Future<MultipartUploadResult> submitTaskForPartUploading(UploadPartRequest request) {
-        Callable<MultipartUploadResult> task = createCallableForPartUploadingAndReturnETag(request);
-        return getExecutorService().submit(task);
+    // A part waiting to be sent again is not a task of the pool yet
+    private void awaitPendingParts() throws DestinationOperationException {
+        try {
+            CompletableFuture.allOf(pendingParts.toArray(new CompletableFuture<?>[0])).get(MAX_UPLOADING_TIME, TimeUnit.SECONDS);
+        } catch (ExecutionException ex) {
+            // Failed parts are reported to the uploads that submitted them
+        } catch (TimeoutException ex) {
+            log.warn("Parts still uploading after " + MAX_UPLOADING_TIME + " seconds, closing anyway");
+        } catch (InterruptedException ex) {
+            throw new DestinationOperationException("Cannot finish uploading", ex);
+        }
+    }
+
+    public boolean isClosed() {
+        return getExecutorService().isShutdown();
     }
 
-    private Callable<MultipartUploadResult> createCallableForPartUploadingAndReturnETag(UploadPartRequest request) {
-        return () -> {
+    /**
+     * Waits for the parts already submitted, then stops the threads
+     */
+    @Override
+    public void close() {
+        try {
+            awaitPendingParts();
+            shutdownAndAwaitTermination();
+        } catch (DestinationOperationException ex) {
+            getExecutorService().shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sends the part until it is uploaded. The future fails with a {@link DestinationOperationException}
+     * on a fatal error or once the attempts of the part are used up.
+     */
+    CompletableFuture<MultipartUploadResult> submitTaskForPartUploading(UploadPartRequest request) {
+        CompletableFuture<MultipartUploadResult> future = uploadPartWithRetries(request, 1, partRetryPolicy);
+        pendingParts.add(future);
+        future.whenComplete((result, failure) -> pendingParts.remove(future));
+        return future;
+    }
+
+    /**
+     * No thread waits during the backoff, the part is sent again by a delayed task
+     */
+    private CompletableFuture<MultipartUploadResult> uploadPartWithRetries(UploadPartRequest request, int attempt, PartRetryPolicy retryPolicy) {
+        CompletableFuture<MultipartUploadResult> upload;
+        try {
+            upload = bytesInFlightLimiter == null ? sendPart(request) : uploadPartWithinBudget(request);
+        } catch (RejectedExecutionException ex) {
+            return CompletableFuture.failedFuture(new DestinationOperationException("Uploader is closed", ex));
+        }
+        return upload
+                .handle((result, failure) -> {
+                    if (failure == null) {
+                        return CompletableFuture.completedFuture(result);
+                    }
+                    Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                    if (attempt >= retryPolicy.getMaxAttempts() || !retryPolicy.isRetryable(cause)) {
+                        return CompletableFuture.<MultipartUploadResult>failedFuture(asDestinationOperationException(request, cause));
+                    }
+                    Duration delay = retryPolicy.getDelay(attempt + 1);
+                    log.warn("Upload of part " + request.getPartNumber() + " of " + request.getKey() + " failed, attempt "
+                            + attempt + "/" + retryPolicy.getMaxAttempts() + ", sending it again in " + delay.toMillis() + " ms: " + cause.getMessage());
+                    Executor delayedExecutor = CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS);
+                    return CompletableFuture.supplyAsync(() -> attempt + 1, delayedExecutor)
+                            .thenCompose(nextAttempt -> uploadPartWithRetries(request, nextAttempt, retryPolicy));
+                })
+                .thenCompose(Function.identity());
+    }
+
+    /**
+     * Waits for the bytes of the part on a virtual thread, then sends it, the bytes are given back once it is sent
+     */
+    private CompletableFuture<MultipartUploadResult> uploadPartWithinBudget(UploadPartRequest request) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return bytesInFlightLimiter.acquire(request.getPartSize());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(new DestinationOperationException("Interrupted while waiting to send a part", ex));
+            }
+        }, executorService).thenCompose(permits -> {
+            CompletableFuture<MultipartUploadResult> upload;
+            try {
+                upload = sendPart(request);
+            } catch (RuntimeException ex) {
+                bytesInFlightLimiter.release(permits);
+                throw ex;
+            }
+            return upload.whenComplete((result, failure) -> bytesInFlightLimiter.release(permits));
+        });
+    }
+
+    /**
+     * The part is read from a throttled stream over its region of the file, opened for each attempt
+     * and closed once the attempt is over. The stream asks the limiter for every chunk, so a limit
+     * set while the part is sent applies to the rest of it, and costs nothing while there is none.
+     */
+    private CompletableFuture<MultipartUploadResult> sendPart(UploadPartRequest request) {
+        UploadRateLimiter rateLimiter = uploadRateLimiter;
+        if (request.getFile() == null) {
+            return uploadPartAsync(request);
+        }
+        InputStream body;
+        try {
+            body = new ThrottledFileRegionInputStream(request.getFile(), request.getFileOffset(), request.getPartSize(), rateLimiter);
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(new DestinationOperationException("Cannot read part " + request.getPartNumber() + " of " + request.getKey(), ex));
+        }
+        UploadPartRequest throttledRequest = ((UploadPartRequest) request.clone())
+                .withFile(null)
+                .withFileOffset(0)
+                .withInputStream(body);
+        CompletableFuture<MultipartUploadResult> upload;
+        try {
+            upload = uploadPartAsync(throttledRequest);
+        } catch (RuntimeException ex) {
+            closeQuietly(body);
+            throw ex;
+        }
+        return upload.whenComplete((result, failure) -> closeQuietly(body));
+    }
+
+    // The part holds its thread for the whole round trip, the v1 client has no asynchronous API
+    private CompletableFuture<MultipartUploadResult> uploadPartAsync(UploadPartRequest request) {
+        return CompletableFuture.supplyAsync(() -> {
             try {
                 return destination.uploadMultiPart(request);
-            } catch (DestinationOperationException e) {
-                throw e;
+            } catch (DestinationOperationException ex) {
+                throw new CompletionException(ex);
             }
-        };
+        }, executorService);
+    }
+
+    private static void closeQuietly(InputStream body) {
+        try {
+            body.close();
+        } catch (IOException ex) {
+            log.warn("Cannot close part body", ex);
+        }
+    }
+
+    private static DestinationOperationException asDestinationOperationException(UploadPartRequest request, Throwable ex) {
+        if (ex instanceof DestinationOperationException) {
+            return (DestinationOperationException) ex;
+        }
+        return new DestinationOperationException("Fail to upload multipart: " + request.getKey() + " #" + request.getPartNumber(), ex);
     }
 }
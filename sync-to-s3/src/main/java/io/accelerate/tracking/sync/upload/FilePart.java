@@ -0,0 +1,48 @@
+package io.accelerate.tracking.sync.upload;
+
+/**
+ * Describes a part of a file by its position, the bytes are read only when the part is uploaded
+ */
+class FilePart {
+
+    private final int partNumber;
+
+    private final long offset;
+
+    private final int length;
+
+    private final boolean lastPart;
+
+    FilePart(int partNumber, long offset, int length, boolean lastPart) {
+        this.partNumber = partNumber;
+        this.offset = offset;
+        this.length = length;
+        this.lastPart = lastPart;
+    }
+
+    int getPartNumber() {
+        return partNumber;
+    }
+
+    long getOffset() {
+        return offset;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    boolean isLastPart() {
+        return lastPart;
+    }
+
+    @Override
+    public String toString() {
+        return "FilePart{" +
+                "partNumber=" + partNumber +
+                ", offset=" + offset +
+                ", length=" + length +
+                ", lastPart=" + lastPart +
+                '}';
+    }
+}
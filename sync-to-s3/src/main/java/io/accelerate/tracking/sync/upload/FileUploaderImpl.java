@@ -13,8 +13,6 @@ import static org.slf4j.LoggerFactory.getLogger;
 public class FileUploaderImpl implements FileUploader {
     private static final Logger log = getLogger(FileUploaderImpl.class);
 
-    private static final int RETRY_TIMES_COUNT = 2;
-
     private final Destination destination;
 
     private final UploadingStrategy uploadingStrategy;
@@ -29,25 +27,20 @@ public class FileUploaderImpl implements FileUploader {
         upload(file, file.getName());
     }
 
+    /**
+     * Failed parts, and the calls that start, list and commit the upload, are retried
+     * with the {@link PartRetryPolicy} of the uploader, so a failure here is final for this upload.
+     * The parts already uploaded are resumed by the next sync.
+     */
     @Override
     public void upload(File file, String path) throws UploadingException {
-        upload(file, path, RETRY_TIMES_COUNT);
-    }
-
-    private void upload(File file, String path, int retry) throws UploadingException {
         String filePath = FileHelper.getRelativeFilePathToCwd(file);
         log.info("Uploading file " + filePath);
         try {
             uploadInternal(file, path);
         } catch (IOException | DestinationOperationException e) {
-            //TODO: Might need to change to loop instead of recursive construct
-            if (retry == 0) {
-                log.error("Error during uploading, can't upload file due to exception: " + e.getMessage());
-                throw new UploadingException("Can't upload file " + filePath + " due to error " + e.getMessage(), e);
-            } else {
-                log.warn("Error during uploading : " + e.getMessage() + " Trying next time...");
-                upload(file, path, retry - 1);
-            }
+            log.error("Error during uploading, can't upload file due to exception: " + e.getMessage());
+            throw new UploadingException("Can't upload file " + filePath + " due to error " + e.getMessage(), e);
         } finally {
             log.info("Finished uploading file " + filePath);
         }
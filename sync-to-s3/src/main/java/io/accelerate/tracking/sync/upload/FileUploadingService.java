@@ -1,5 +1,6 @@
 package io.accelerate.tracking.sync.upload;
 
+import io.accelerate.tracking.sync.sync.LockIndex;
 import io.accelerate.tracking.sync.sync.destination.Destination;
 import io.accelerate.tracking.sync.sync.progress.DummyProgressListener;
 import io.accelerate.tracking.sync.sync.progress.ProgressListener;
@@ -8,40 +9,115 @@ import java.io.File;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-public class FileUploadingService {
+public class FileUploadingService implements AutoCloseable {
+
+    private static final int DEFAULT_MAX_PARTS_IN_FLIGHT = 4;
 
     private final Destination destination;
 
+    private final ConcurrentMultipartUploader concurrentUploader;
+
+    // Only an uploader created by the service is closed by it
+    private final boolean ownsConcurrentUploader;
+
     private ProgressListener listener = new DummyProgressListener();
 
+    private int maxPartsInFlight = DEFAULT_MAX_PARTS_IN_FLIGHT;
+
+    private PartIntegrity partIntegrity = PartIntegrity.CONTENT_MD5;
+
+    private PartSizePolicy partSizePolicy = PartSizePolicy.defaultPolicy();
+
+    private UploadStateRegistry uploadStateRegistry = new UploadStateRegistry();
+
+    /**
+     * The service creates its own uploader, its threads are released by {@link #close()}
+     */
     public FileUploadingService(Destination destination) {
+        this(destination, new ConcurrentMultipartUploader(destination), true);
+    }
+
+    /**
+     * @param concurrentUploader uploader shared by all the files, it is closed by its owner
+     */
+    public FileUploadingService(Destination destination, ConcurrentMultipartUploader concurrentUploader) {
+        this(destination, concurrentUploader, false);
+    }
+
+    private FileUploadingService(Destination destination, ConcurrentMultipartUploader concurrentUploader, boolean ownsConcurrentUploader) {
         this.destination = destination;
+        this.concurrentUploader = concurrentUploader;
+        this.ownsConcurrentUploader = ownsConcurrentUploader;
     }
 
     public Destination getDestination() {
         return destination;
     }
 
+    ConcurrentMultipartUploader getConcurrentUploader() {
+        return concurrentUploader;
+    }
+
     public void setListener(ProgressListener listener) {
         this.listener = listener;
     }
 
-    public void upload(File file) {
-        upload(file, file.getName());
+    public void setMaxPartsInFlight(int maxPartsInFlight) {
+        this.maxPartsInFlight = maxPartsInFlight;
     }
 
-    public void upload(File file, String remoteName) {
-        FileUploader fileUploader = createFileUploader();
+    public void setPartIntegrity(PartIntegrity partIntegrity) {
+        this.partIntegrity = partIntegrity;
+    }
+
+    public void setPartSizePolicy(PartSizePolicy partSizePolicy) {
+        this.partSizePolicy = partSizePolicy;
+    }
+
+    public void setUploadStateRegistry(UploadStateRegistry uploadStateRegistry) {
+        this.uploadStateRegistry = uploadStateRegistry;
+    }
+
+    public boolean upload(File file) {
+        return upload(file, file.getName());
+    }
+
+    public boolean upload(File file, String remoteName) {
+        return upload(file, remoteName, null);
+    }
+
+    /**
+     * @param lockIndex lock files seen by the scan that found the file, null to check the lock file on disk
+     * @return false if the upload failed, the failure is logged
+     */
+    public boolean upload(File file, String remoteName, LockIndex lockIndex) {
+        FileUploader fileUploader = createFileUploader(lockIndex);
         try {
             fileUploader.upload(file, remoteName);
+            return true;
         } catch (UploadingException ex) {
             Logger.getLogger(FileUploadingService.class.getName()).log(Level.SEVERE, null, ex);
+            return false;
         }
     }
 
-    private FileUploader createFileUploader() {
-        UploadingStrategy strategy = new MultipartUploadFileUploadingStrategy(destination);
+    private FileUploader createFileUploader(LockIndex lockIndex) {
+        MultipartUploadFileUploadingStrategy strategy = new MultipartUploadFileUploadingStrategy(destination, concurrentUploader, maxPartsInFlight);
         strategy.setListener(listener);
+        strategy.setPartIntegrity(partIntegrity);
+        strategy.setPartSizePolicy(partSizePolicy);
+        strategy.setUploadStateRegistry(uploadStateRegistry);
+        strategy.setLockIndex(lockIndex);
         return new FileUploaderImpl(destination, strategy);
     }
+
+    /**
+     * Closes the uploader created by the service, a shared uploader is left open
+     */
+    @Override
+    public void close() {
+        if (ownsConcurrentUploader) {
+            concurrentUploader.close();
+        }
+    }
 }
@@ -1,28 +1,30 @@
 package io.accelerate.tracking.sync.upload;
 
 import com.amazonaws.services.s3.model.PartETag;
-import com.amazonaws.services.s3.model.PartListing;
 import com.amazonaws.services.s3.model.UploadPartRequest;
 import org.slf4j.Logger;
-import io.accelerate.tracking.sync.helpers.ByteHelper;
 import io.accelerate.tracking.sync.helpers.ChecksumHelper;
 import io.accelerate.tracking.sync.helpers.FileHelper;
+import io.accelerate.tracking.sync.sync.LockIndex;
 import io.accelerate.tracking.sync.sync.destination.Destination;
 import io.accelerate.tracking.sync.sync.destination.DestinationOperationException;
 import io.accelerate.tracking.sync.sync.progress.ProgressListener;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.slf4j.LoggerFactory.getLogger;
 
-public class MultipartUploadFile {
+public class MultipartUploadFile implements Closeable {
     private static final Logger log = getLogger(MultipartUploadFile.class);
 
 
     //Minimum part size is 5 MB
-    private static final int MINIMUM_PART_SIZE = 5 * 1024 * 1024;
+    public static final int MINIMUM_PART_SIZE = 5 * 1024 * 1024;
 
     private final File file;
 
@@ -30,24 +32,66 @@ public class MultipartUploadFile {
 
     private final Destination destination;
 
+    private final UploadStateRegistry uploadStateRegistry;
+
+    // Null to check the lock file on disk
+    private final LockIndex lockIndex;
+
+    private final PartRetryPolicy retryPolicy;
+
     private String uploadId;
 
     private long uploadedSize = 0;
 
-    private PartListing alreadyUploadedParts;
+    private UploadedParts alreadyUploadedParts;
 
-    private Set<Integer> failedMiddlePartNumbers;
+    private int[] failedMiddlePartNumbers;
 
     private int nextPartToUploadIndex = 1;
 
-    private List<PartETag> partETags;
+    private PartStates partStates;
 
     private boolean isWritingFinished;
 
+    private PartSizePolicy partSizePolicy = PartSizePolicy.defaultPolicy();
+
+    private PartSlicer partSlicer;
+
+    private FileChannel fileChannel;
+
+    private PartIntegrity partIntegrity = PartIntegrity.CONTENT_MD5;
+
+    // Length and modification time of the file the parts were planned from
+    private long plannedFileLength = -1;
+
+    private long plannedLastModified = -1;
+
     public MultipartUploadFile(File file, String remotePath, Destination destination) throws DestinationOperationException {
+        this(file, remotePath, destination, new UploadStateRegistry());
+    }
+
+    public MultipartUploadFile(File file, String remotePath, Destination destination, UploadStateRegistry uploadStateRegistry) throws DestinationOperationException {
+        this(file, remotePath, destination, uploadStateRegistry, null);
+    }
+
+    /**
+     * @param lockIndex lock files seen by the scan that found the file, it spares the check on disk of a locked file,
+     *                  null to always check the lock file on disk
+     */
+    public MultipartUploadFile(File file, String remotePath, Destination destination, UploadStateRegistry uploadStateRegistry, LockIndex lockIndex) throws DestinationOperationException {
+        this(file, remotePath, destination, uploadStateRegistry, lockIndex, new PartRetryPolicy());
+    }
+
+    /**
+     * @param retryPolicy how the calls that start, list and commit the upload are retried
+     */
+    public MultipartUploadFile(File file, String remotePath, Destination destination, UploadStateRegistry uploadStateRegistry, LockIndex lockIndex, PartRetryPolicy retryPolicy) throws DestinationOperationException {
         this.file = file;
         this.remotePath = remotePath;
         this.destination = destination;
+        this.uploadStateRegistry = uploadStateRegistry;
+        this.lockIndex = lockIndex;
+        this.retryPolicy = retryPolicy;
         init();
     }
 
@@ -60,27 +104,104 @@ public class MultipartUploadFile {
     }
 
     public List<PartETag> getPartETags() {
-        return partETags;
+        return partStates.toPartETags();
     }
 
-    public Set<Integer> getFailedMiddlePartNumbers() {
+    public int[] getFailedMiddlePartNumbers() {
         return failedMiddlePartNumbers;
     }
 
+    public void setPartIntegrity(PartIntegrity partIntegrity) {
+        this.partIntegrity = partIntegrity;
+    }
+
+    /**
+     * Sizes of the parts of a new upload. A resumed upload keeps the sizes of its uploaded parts
+     * if they were planned with another policy.
+     */
+    public void setPartSizePolicy(PartSizePolicy partSizePolicy) {
+        this.partSizePolicy = partSizePolicy;
+        this.partSlicer = null;
+    }
+
+    /**
+     * The policy is checked against the parts as they were listed, not as they are being uploaded.
+     * An upload whose missing parts cannot be planned is aborted and started again.
+     */
+    private PartSlicer getPartSlicer() throws DestinationOperationException {
+        if (partSlicer == null) {
+            PartSizePolicy policy = partSizePolicy;
+            if (alreadyUploadedParts != null) {
+                policy = MultipartUploadHelper.getPartSizePolicy(alreadyUploadedParts.getPartStates(), partSizePolicy);
+            }
+            if (policy == null) {
+                restartUploading();
+                policy = partSizePolicy;
+            }
+            partSlicer = new PartSlicer(policy);
+        }
+        return partSlicer;
+    }
+
     private void init() throws DestinationOperationException {
-        alreadyUploadedParts = destination.getAlreadyUploadedParts(remotePath);
-        isWritingFinished = !FileHelper.lockFileExists(file);
-        boolean uploadingStarted = alreadyUploadedParts != null;
-        if (!uploadingStarted) {
-            uploadId = destination.initUploading(remotePath);
-            failedMiddlePartNumbers = Collections.emptySet();
+        alreadyUploadedParts = getAlreadyUploadedParts();
+        isWritingFinished = !isLocked();
+        if (alreadyUploadedParts == null) {
+            startUploading();
         } else {
             uploadId = alreadyUploadedParts.getUploadId();
-            failedMiddlePartNumbers = MultipartUploadHelper.getFailedMiddlePartNumbers(alreadyUploadedParts);
-            uploadedSize = MultipartUploadHelper.getUploadedSize(alreadyUploadedParts);
-            nextPartToUploadIndex = MultipartUploadHelper.getLastPartIndex(alreadyUploadedParts) + 1;
+            trackParts(alreadyUploadedParts.getPartStates().copy());
         }
-        partETags = MultipartUploadHelper.getPartETagsFromPartListing(alreadyUploadedParts);
+    }
+
+    /**
+     * A scan that saw the lock file is enough to know the file is being written, one that did not
+     * may have run before the lock was created, so the lock file is checked on disk
+     */
+    private boolean isLocked() {
+        if (lockIndex != null && lockIndex.isLocked(file)) {
+            return true;
+        }
+        return FileHelper.lockFileExists(file);
+    }
+
+    private void startUploading() throws DestinationOperationException {
+        alreadyUploadedParts = null;
+        uploadId = retryPolicy.call("Start of upload of " + remotePath, () -> destination.initUploading(remotePath));
+        uploadStateRegistry.uploadStarted(remotePath, uploadId);
+        trackParts(new PartStates());
+    }
+
+    private void trackParts(PartStates partStates) {
+        this.partStates = partStates;
+        failedMiddlePartNumbers = partStates.getMissingPartNumbers();
+        uploadedSize = partStates.getUploadedSize();
+        nextPartToUploadIndex = partStates.getLastPartNumber() + 1;
+    }
+
+    /**
+     * The offsets of the missing parts depend on sizes that were never recorded,
+     * uploading them at guessed offsets would corrupt the object
+     */
+    private void restartUploading() throws DestinationOperationException {
+        log.warn("Missing parts of " + remotePath + " were planned with another part size, starting the upload again");
+        destination.abortMultipartUpload(remotePath, uploadId);
+        uploadStateRegistry.forget(remotePath);
+        startUploading();
+    }
+
+    /**
+     * The destination is asked only when no local state consistent with the file is known
+     */
+    private UploadedParts getAlreadyUploadedParts() throws DestinationOperationException {
+        UploadedParts uploadedParts = uploadStateRegistry.getUploadedParts(remotePath, file);
+        if (uploadedParts == null) {
+            uploadedParts = retryPolicy.call("Listing of parts of " + remotePath, () -> destination.getAlreadyUploadedParts(remotePath));
+            if (uploadedParts != null) {
+                uploadStateRegistry.uploadResumed(remotePath, uploadedParts);
+            }
+        }
+        return uploadedParts;
     }
 
     public void validateUploadedFileSize() {
@@ -93,8 +214,22 @@ public class MultipartUploadFile {
         }
     }
 
-    public BufferedInputStream createBufferedInputStreamFromFile() throws FileNotFoundException {
-        return new BufferedInputStream(new FileInputStream(file));
+    /**
+     * One channel is opened per file and shared by all its parts, it is closed by {@link #close()}
+     */
+    private FileChannel getFileChannel() throws IOException {
+        if (fileChannel == null) {
+            fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        }
+        return fileChannel;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fileChannel != null) {
+            fileChannel.close();
+            fileChannel = null;
+        }
     }
 
     public UploadPartRequest createUploadPartRequest() throws DestinationOperationException {
@@ -102,43 +237,84 @@ public class MultipartUploadFile {
                 .withUploadId(uploadId);
     }
 
-    public UploadPartRequest getUploadPartRequestForData(byte[] nextPart, boolean isLastPart, int partNumber) throws IOException, DestinationOperationException {
-        try (ByteArrayInputStream partInputStream = ByteHelper.createInputStream(nextPart)) {
-            UploadPartRequest request = createUploadPartRequest()
-                    .withPartNumber(partNumber)
-                    .withMD5Digest(ChecksumHelper.digest(nextPart, "MD5"))
-                    .withLastPart(isLastPart)
-                    .withPartSize(nextPart.length)
-                    .withInputStream(partInputStream);
-            return request;
+    /**
+     * The request body is the file region of the part, it is read by the client while uploading
+     * so the part bytes are never copied into memory.
+     */
+    UploadPartRequest getUploadPartRequestForPart(FilePart part) throws IOException, DestinationOperationException {
+        UploadPartRequest request = createUploadPartRequest()
+                .withPartNumber(part.getPartNumber())
+                .withLastPart(part.isLastPart())
+                .withPartSize(part.getLength())
+                .withFile(file)
+                .withFileOffset(part.getOffset());
+        if (partIntegrity == PartIntegrity.CONTENT_MD5) {
+            request.setMd5Digest(ChecksumHelper.digest(getFileChannel(), part.getOffset(), part.getLength(), "MD5"));
         }
+        return request;
+    }
+
+    /**
+     * Keeps the ETag of an uploaded part for the commit, and records it as confirmed
+     */
+    void partUploaded(MultipartUploadResult result) {
+        PartETag partETag = result.getResult().getPartETag();
+        partStates.confirm(partETag.getPartNumber(), partETag.getETag(), result.getRequest().getPartSize());
+        uploadStateRegistry.partUploaded(remotePath, partETag.getPartNumber(), partETag.getETag(), result.getRequest().getPartSize());
     }
 
+    /**
+     * A lock created while the parts were uploaded means the writing has not finished,
+     * so the lock file is checked on disk again right before the commit
+     */
     public void commitIfFinishedWriting() throws DestinationOperationException {
-        if (isWritingFinished) {
-            destination.commitMultipartUpload(remotePath, partETags, uploadId);
+        if (isWritingFinished && !FileHelper.lockFileExists(file)) {
+            List<PartETag> partETags = partStates.toPartETags();
+            retryPolicy.call("Commit of upload of " + remotePath, () -> {
+                destination.commitMultipartUpload(remotePath, partETags, uploadId);
+                return null;
+            });
+            uploadStateRegistry.forget(remotePath);
+        } else {
+            uploadStateRegistry.fileUploaded(remotePath, plannedFileLength, plannedLastModified);
         }
     }
 
-    public Stream<UploadPartRequest> streamUploadPartRequestForFailedParts() {
-        return getFailedMiddlePartNumbers()
-                .stream()
-                .map(partNumber -> {
-                    try {
-                        byte[] partData = readPart(partNumber);
-                        UploadPartRequest request = getUploadPartRequestForData(partData, false, partNumber);
-                        uploadedSize += partData.length;
-                        return request;
-                    } catch (IOException | DestinationOperationException ex) {
-                        log.error("Cannot upload part " + partNumber, ex);
-                        return null;
-                    }
-                })
-                .filter(Objects::nonNull);
+    /**
+     * The local state can no longer be trusted, the next upload asks the destination
+     */
+    void forgetUploadState() {
+        uploadStateRegistry.forget(remotePath);
+    }
+
+    /**
+     * Streams the missing parts before the last uploaded one. A part that cannot be read
+     * fails the stream with an {@link UncheckedIOException}, the upload cannot be committed without it.
+     */
+    public Stream<UploadPartRequest> streamUploadPartRequestForFailedParts() throws DestinationOperationException {
+        getPartSlicer();
+        return Arrays.stream(getFailedMiddlePartNumbers())
+                .mapToObj(this::createUploadPartRequestForFailedPart);
+    }
+
+    private UploadPartRequest createUploadPartRequestForFailedPart(int partNumber) {
+        try {
+            UploadPartRequest request = getUploadPartRequestForFailedPart(partNumber);
+            uploadedSize += request.getPartSize();
+            return request;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot read part " + partNumber + " of " + remotePath, ex);
+        } catch (DestinationOperationException ex) {
+            throw new UncheckedDestinationOperationException("Cannot create upload request for part " + partNumber, ex);
+        }
     }
 
-    public byte[] readPart(int partNumber) throws IOException {
-        return ByteHelper.readPart(partNumber, file);
+    UploadPartRequest getUploadPartRequestForFailedPart(int partNumber) throws IOException, DestinationOperationException {
+        FilePart part = getPartSlicer().partAt(partNumber);
+        if (getFileChannel().size() < part.getOffset() + part.getLength()) {
+            throw new IOException("File is shorter than expected, cannot read " + part);
+        }
+        return getUploadPartRequestForPart(part);
     }
 
     public void notifyStart(ProgressListener listener) {
@@ -149,20 +325,37 @@ public class MultipartUploadFile {
         listener.uploadFileFinished(file);
     }
 
+    /**
+     * Streams the parts that have not been uploaded yet.
+     *
+     * The parts are planned from a snapshot of the file length, the stream is lazy
+     * so the request of a part is created only when it is pulled.
+     */
     public Stream<UploadPartRequest> streamUploadPartRequestForIncompleteParts() throws IOException, DestinationOperationException {
-        try (InputStream inputStream = createBufferedInputStreamFromFile()) {
-            byte[] nextPart = ByteHelper.getNextPartFromInputStream(inputStream, uploadedSize, isWritingFinished);
-            int partSize = nextPart.length;
-            List<UploadPartRequest> requests = new ArrayList<>();
-            while (partSize > 0) {
-                boolean isLastPart = isWritingFinished && partSize < MINIMUM_PART_SIZE;
-                UploadPartRequest request = getUploadPartRequestForData(nextPart, isLastPart, nextPartToUploadIndex);
-                nextPartToUploadIndex++;
-                requests.add(request);
-                nextPart = ByteHelper.getNextPartFromInputStream(inputStream, 0, isWritingFinished);
-                partSize = nextPart.length;
-            }
-            return requests.stream();
+        plannedLastModified = file.lastModified();
+        long fileLength = getFileChannel().size();
+        plannedFileLength = fileLength;
+        PartSlicer slicer = getPartSlicer();
+        long nextPartOffset = slicer.partAt(nextPartToUploadIndex).getOffset();
+        List<FilePart> parts = slicer.slice(nextPartOffset, nextPartToUploadIndex, fileLength, isWritingFinished)
+                .collect(Collectors.toList());
+        if (!parts.isEmpty() && parts.get(parts.size() - 1).getPartNumber() > PartSizePolicy.MAXIMUM_PART_COUNT) {
+            throw new IOException("File " + file.getName() + " needs more than " + PartSizePolicy.MAXIMUM_PART_COUNT
+                    + " parts, a part size policy with larger parts is required");
+        }
+        return parts.stream()
+                .map(this::createUploadPartRequestForIncompletePart);
+    }
+
+    private UploadPartRequest createUploadPartRequestForIncompletePart(FilePart part) {
+        try {
+            UploadPartRequest request = getUploadPartRequestForPart(part);
+            nextPartToUploadIndex = part.getPartNumber() + 1;
+            return request;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Cannot read part " + part.getPartNumber() + " of file " + file.getName(), ex);
+        } catch (DestinationOperationException ex) {
+            throw new UncheckedDestinationOperationException("Cannot create upload request for part " + part.getPartNumber(), ex);
         }
     }
 }
@@ -1,8 +1,8 @@
 package io.accelerate.tracking.sync.upload;
 
-import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.UploadPartRequest;
 import org.slf4j.Logger;
+import io.accelerate.tracking.sync.sync.LockIndex;
 import io.accelerate.tracking.sync.sync.destination.Destination;
 import io.accelerate.tracking.sync.sync.destination.DestinationOperationException;
 import io.accelerate.tracking.sync.sync.progress.DummyProgressListener;
@@ -10,10 +10,13 @@ import io.accelerate.tracking.sync.sync.progress.ProgressListener;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.List;
-import java.util.Objects;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.stream.Stream;
 
 import static org.slf4j.LoggerFactory.getLogger;
@@ -21,64 +24,138 @@ import static org.slf4j.LoggerFactory.getLogger;
 public class MultipartUploadFileUploadingStrategy implements UploadingStrategy {
     private static final Logger log = getLogger(MultipartUploadFileUploadingStrategy.class);
 
-    private static final int DEFAULT_THREAD_COUNT = 4;
-
     private Destination destination;
 
     private ConcurrentMultipartUploader concurrentUploader;
 
+    private final int maxPartsInFlight;
+
     private ProgressListener listener = new DummyProgressListener();
 
-    /**
-     * Creates new Multipart upload strategy
-     */
-    MultipartUploadFileUploadingStrategy(Destination destination) {
-        this(destination, DEFAULT_THREAD_COUNT);
-    }
+    private PartIntegrity partIntegrity = PartIntegrity.CONTENT_MD5;
+
+    private PartSizePolicy partSizePolicy = PartSizePolicy.defaultPolicy();
+
+    private UploadStateRegistry uploadStateRegistry = new UploadStateRegistry();
+
+    private LockIndex lockIndex;
 
     /**
-     * Creates new Multipart upload strategy.
+     * Creates new Multipart upload strategy on a shared uploader, the uploader is not closed by the strategy.
      *
-     * @param threadsCount count of threads that should be used for uploading
+     * @param concurrentUploader uploader whose threads upload the parts
+     * @param maxPartsInFlight count of parts of the file submitted but not yet completed
      */
-    private MultipartUploadFileUploadingStrategy(Destination destination, int threadsCount) {
+    MultipartUploadFileUploadingStrategy(Destination destination, ConcurrentMultipartUploader concurrentUploader, int maxPartsInFlight) {
+        if (maxPartsInFlight < 1) {
+            throw new IllegalArgumentException("Max parts in flight should be >= 1");
+        }
         this.destination = destination;
-        concurrentUploader = new ConcurrentMultipartUploader(destination, threadsCount);
+        this.maxPartsInFlight = maxPartsInFlight;
+        this.concurrentUploader = concurrentUploader;
     }
 
     @Override
     public void upload(File file, String remotePath) throws DestinationOperationException, IOException {
-        MultipartUploadFile multipartUploadFile = new MultipartUploadFile(file, remotePath, destination);
-        multipartUploadFile.validateUploadedFileSize();
-        multipartUploadFile.notifyStart(listener);
-        uploadRequiredParts(multipartUploadFile);
-        multipartUploadFile.notifyFinish(listener);
+        try (MultipartUploadFile multipartUploadFile = new MultipartUploadFile(file, remotePath, destination, uploadStateRegistry, lockIndex, concurrentUploader.getPartRetryPolicy())) {
+            multipartUploadFile.setPartIntegrity(partIntegrity);
+            multipartUploadFile.setPartSizePolicy(partSizePolicy);
+            multipartUploadFile.validateUploadedFileSize();
+            multipartUploadFile.notifyStart(listener);
+            try {
+                uploadRequiredParts(multipartUploadFile);
+            } catch (DestinationOperationException | IOException ex) {
+                multipartUploadFile.forgetUploadState();
+                throw ex;
+            }
+            multipartUploadFile.notifyFinish(listener);
+        }
     }
 
     private void uploadRequiredParts(MultipartUploadFile multipartUploadFile) throws IOException, DestinationOperationException {
-        List<PartETag> eTags = multipartUploadFile.getPartETags();
-
-        Stream<UploadPartRequest> failedPartRequestStream = multipartUploadFile
-                .streamUploadPartRequestForFailedParts();
-        submitUploadRequestStream(failedPartRequestStream, eTags);
-
-        Stream<UploadPartRequest> incompletePartRequestStream = multipartUploadFile
-                .streamUploadPartRequestForIncompleteParts();
-        submitUploadRequestStream(incompletePartRequestStream, eTags);
-
-        concurrentUploader.shutdownAndAwaitTermination();
+        try {
+            Stream<UploadPartRequest> failedPartRequestStream = multipartUploadFile
+                    .streamUploadPartRequestForFailedParts();
+            submitUploadRequestStream(multipartUploadFile, failedPartRequestStream);
+
+            Stream<UploadPartRequest> incompletePartRequestStream = multipartUploadFile
+                    .streamUploadPartRequestForIncompleteParts();
+            submitUploadRequestStream(multipartUploadFile, incompletePartRequestStream);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        } catch (UncheckedDestinationOperationException ex) {
+            throw ex.getCause();
+        }
 
         multipartUploadFile.commitIfFinishedWriting();
     }
 
-    private void submitUploadRequestStream(Stream<UploadPartRequest> requestStream, List<PartETag> partETags) {
-        requestStream
-                .map(this::attachListenerToRequest)
-                .map(concurrentUploader::submitTaskForPartUploading)
-                .map(MultipartUploadFileUploadingStrategy::getUploadingResult)
-                .filter(Objects::nonNull)
-                .map(e -> e.getResult().getPartETag())
-                .forEach(partETags::add);
+    /**
+     * Keeps up to {@code maxPartsInFlight} parts uploading at the same time.
+     * The next request is pulled from the stream only once a slot is free,
+     * and the ETags are collected in completion order.
+     *
+     * Failed parts are already retried by the uploader, so a part that still fails fails the file,
+     * as does a part whose request cannot be created. No part is submitted after it, the parts in flight
+     * are collected so their state is recorded.
+     */
+    private void submitUploadRequestStream(MultipartUploadFile multipartUploadFile, Stream<UploadPartRequest> requestStream) throws DestinationOperationException {
+        BlockingQueue<Future<MultipartUploadResult>> completed = new LinkedBlockingQueue<>();
+        Iterator<UploadPartRequest> requests = requestStream.iterator();
+        int inFlight = 0;
+        DestinationOperationException failure = null;
+        RuntimeException requestFailure = null;
+        while (failure == null) {
+            if (inFlight == maxPartsInFlight) {
+                failure = collectNextCompleted(completed, multipartUploadFile);
+                inFlight--;
+                continue;
+            }
+            UploadPartRequest request;
+            try {
+                if (!requests.hasNext()) {
+                    break;
+                }
+                request = attachListenerToRequest(requests.next());
+            } catch (UncheckedIOException | UncheckedDestinationOperationException ex) {
+                requestFailure = ex;
+                break;
+            }
+            CompletableFuture<MultipartUploadResult> future = concurrentUploader.submitTaskForPartUploading(request);
+            future.whenComplete((result, ex) -> completed.add(future));
+            inFlight++;
+        }
+        for (; inFlight > 0; inFlight--) {
+            DestinationOperationException partFailure = collectNextCompleted(completed, multipartUploadFile);
+            if (failure == null) {
+                failure = partFailure;
+            }
+        }
+        if (requestFailure != null) {
+            throw requestFailure;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * @return the failure of the part, or null if it was uploaded
+     */
+    private static DestinationOperationException collectNextCompleted(BlockingQueue<Future<MultipartUploadResult>> completed, MultipartUploadFile multipartUploadFile) throws DestinationOperationException {
+        Future<MultipartUploadResult> future;
+        try {
+            future = completed.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DestinationOperationException("Interrupted while waiting for part uploads", e);
+        }
+        try {
+            multipartUploadFile.partUploaded(getUploadingResult(future));
+            return null;
+        } catch (DestinationOperationException ex) {
+            return ex;
+        }
     }
 
     private UploadPartRequest attachListenerToRequest(UploadPartRequest request) {
@@ -87,19 +164,19 @@ public class MultipartUploadFileUploadingStrategy implements UploadingStrategy {
         return request;
     }
 
-    public static MultipartUploadResult getUploadingResult(Future<MultipartUploadResult> future) {
+    public static MultipartUploadResult getUploadingResult(Future<MultipartUploadResult> future) throws DestinationOperationException {
         try {
             return future.get();
         } catch (InterruptedException e) {
-            log.error("Some part uploads was unsuccessful.", e);
-            return null;
+            Thread.currentThread().interrupt();
+            throw new DestinationOperationException("Interrupted while waiting for a part upload", e);
         } catch (ExecutionException e) {
             Throwable ex = e.getCause();
+            log.error("Some part uploads was unsuccessful.", ex);
             if (ex instanceof DestinationOperationException) {
-                log.error("Some part uploads was unsuccessful.", ex);
+                throw (DestinationOperationException) ex;
             }
-            log.error("Some part uploads was unsuccessful.", e);
-            return null;
+            throw new DestinationOperationException("Part upload failed", ex);
         }
     }
 
@@ -108,6 +185,25 @@ public class MultipartUploadFileUploadingStrategy implements UploadingStrategy {
         this.listener = listener;
     }
 
+    public void setPartIntegrity(PartIntegrity partIntegrity) {
+        this.partIntegrity = partIntegrity;
+    }
+
+    public void setPartSizePolicy(PartSizePolicy partSizePolicy) {
+        this.partSizePolicy = partSizePolicy;
+    }
+
+    public void setUploadStateRegistry(UploadStateRegistry uploadStateRegistry) {
+        this.uploadStateRegistry = uploadStateRegistry;
+    }
+
+    /**
+     * Lock files seen by the scan that found the file, see {@link LockIndex}
+     */
+    public void setLockIndex(LockIndex lockIndex) {
+        this.lockIndex = lockIndex;
+    }
+
     @Override
     public void setDestination(Destination destination) {
         this.destination = destination;
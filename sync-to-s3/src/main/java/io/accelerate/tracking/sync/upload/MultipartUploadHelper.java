@@ -1,61 +1,30 @@
 package io.accelerate.tracking.sync.upload;
 
-import com.amazonaws.services.s3.model.PartETag;
-import com.amazonaws.services.s3.model.PartListing;
-import com.amazonaws.services.s3.model.PartSummary;
-
-import java.util.Collection;
-import java.util.List;
-import java.util.Optional;
-import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
-import java.util.stream.Stream;
-
 public final class MultipartUploadHelper {
 
     private MultipartUploadHelper() {
     }
 
-    static List<PartETag> getPartETagsFromPartListing(PartListing listing) {
-        Stream<PartSummary> partSummaryStream = Optional.ofNullable(listing)
-                .map(PartListing::getParts)
-                .map(Collection::stream)
-                .orElseGet(Stream::empty);
-
-        return partSummaryStream.map(partSummary -> new PartETag(partSummary.getPartNumber(), partSummary.getETag()))
-                .collect(Collectors.toList());
-    }
-
-    static long getUploadedSize(PartListing partListing) {
-        return partListing.getParts().stream()
-                .mapToLong(PartSummary::getSize)
-                .sum();
-    }
-
-    static int getLastPartIndex(PartListing partListing) {
-        return partListing.getParts()
-                .stream()
-                .mapToInt(PartSummary::getPartNumber)
-                .max()
-                .orElse(0);
-    }
-
-    static Set<Integer> getFailedMiddlePartNumbers(PartListing partListing) {
-        AtomicInteger lastPartNumber = new AtomicInteger(0);
-        Set<Integer> uploadedParts = partListing.getParts().stream()
-                .map(PartSummary::getPartNumber)
-                .peek(n -> {
-                    if (lastPartNumber.get() < n) {
-                        lastPartNumber.set(n);
-                    }
-                })
-                .collect(Collectors.toSet());
-
-        return IntStream.range(1, lastPartNumber.get())
-                .filter(n -> !uploadedParts.contains(n))
-                .boxed()
-                .collect(Collectors.toSet());
+    /**
+     * The configured policy is kept only if it planned the parts already uploaded,
+     * otherwise the recorded sizes are kept so the next parts start after the last uploaded one.
+     *
+     * @return null when parts are missing between parts planned with another policy,
+     * the offsets of the missing parts are not known
+     */
+    static PartSizePolicy getPartSizePolicy(PartStates partStates, PartSizePolicy configuredPolicy) {
+        int lastPartNumber = partStates.getLastPartNumber();
+        for (int partNumber = partStates.nextConfirmedPart(1); partNumber >= 0; partNumber = partStates.nextConfirmedPart(partNumber + 1)) {
+            long size = partStates.getSize(partNumber);
+            long plannedSize = configuredPolicy.getPartSize(partNumber);
+            boolean smallerLastPart = partNumber == lastPartNumber && size < plannedSize;
+            if (size != plannedSize && !smallerLastPart) {
+                if (partStates.getMissingPartNumbers().length > 0) {
+                    return null;
+                }
+                return new RecordedPartSizePolicy(partStates, configuredPolicy);
+            }
+        }
+        return configuredPolicy;
     }
 }
@@ -0,0 +1,19 @@
+package io.accelerate.tracking.sync.upload;
+
+/**
+ * How the integrity of an uploaded part is checked
+ */
+public enum PartIntegrity {
+
+    /**
+     * The MD5 of the part is read from the file before the upload and sent as Content-MD5,
+     * the destination rejects a part that does not match it
+     */
+    CONTENT_MD5,
+
+    /**
+     * No digest pass before the upload. The S3 client digests the body while sending it
+     * and compares it with the ETag of the part, it skips that check for SSE-C uploads
+     */
+    STREAMING
+}
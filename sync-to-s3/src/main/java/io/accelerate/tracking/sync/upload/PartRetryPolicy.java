@@ -0,0 +1,126 @@
+package io.accelerate.tracking.sync.upload;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.SdkClientException;
+import com.amazonaws.retry.RetryUtils;
+import io.accelerate.tracking.sync.sync.destination.DestinationOperationException;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Decides whether a failed part is sent again, and how long to wait before sending it.
+ * The calls that start, list and commit an upload are retried with the same policy.
+ *
+ * The delay grows exponentially with the attempt and is fully jittered, so the parts
+ * failing together, when the destination throttles for example, are not sent again together.
+ */
+public class PartRetryPolicy {
+    private static final Logger log = getLogger(PartRetryPolicy.class);
+
+    private static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    private static final Duration DEFAULT_BASE_DELAY = Duration.ofMillis(200);
+
+    private static final Duration DEFAULT_MAX_DELAY = Duration.ofSeconds(20);
+
+    private final int maxAttempts;
+
+    private final Duration baseDelay;
+
+    private final Duration maxDelay;
+
+    public PartRetryPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY);
+    }
+
+    /**
+     * @param maxAttempts times a part is sent before its upload fails, 1 disables the retries
+     * @param baseDelay longest wait before the second attempt, it doubles with every attempt
+     * @param maxDelay longest wait before any attempt
+     */
+    public PartRetryPolicy(int maxAttempts, Duration baseDelay, Duration maxDelay) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Max attempts should be >= 1");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Server errors, throttling, timeouts and corrupted bodies can succeed when sent again.
+     * Other errors of the destination, like a missing upload or a denied access, are fatal.
+     */
+    boolean isRetryable(Throwable failure) {
+        Throwable cause = failure;
+        if (cause instanceof DestinationOperationException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof AmazonServiceException) {
+            AmazonServiceException serviceException = (AmazonServiceException) cause;
+            return serviceException.getStatusCode() >= 500
+                    || RetryUtils.isRetryableServiceException(serviceException)
+                    || RetryUtils.isThrottlingException(serviceException)
+                    || RetryUtils.isClockSkewError(serviceException)
+                    || "BadDigest".equals(serviceException.getErrorCode());
+        }
+        if (cause instanceof SdkClientException) {
+            return ((SdkClientException) cause).isRetryable();
+        }
+        return false;
+    }
+
+    /**
+     * Delay before the given attempt, a random duration up to the exponential delay of the attempt
+     */
+    Duration getDelay(int attempt) {
+        int doublings = Math.min(Math.max(attempt - 2, 0), 30);
+        long exponentialDelay = Math.min(baseDelay.toMillis() << doublings, maxDelay.toMillis());
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(exponentialDelay + 1));
+    }
+
+    /**
+     * Makes a call of the destination until it succeeds, the calling thread waits during the backoff.
+     * The failure of the last attempt, or a fatal one, is thrown.
+     */
+    <T> T call(String description, DestinationCall<T> call) throws DestinationOperationException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.call();
+            } catch (DestinationOperationException | SdkClientException ex) {
+                if (attempt >= maxAttempts || !isRetryable(ex)) {
+                    throw ex;
+                }
+                Duration delay = getDelay(attempt + 1);
+                log.warn(description + " failed, attempt " + attempt + "/" + maxAttempts
+                        + ", trying again in " + delay.toMillis() + " ms: " + ex.getMessage());
+                sleep(delay, description);
+            }
+        }
+    }
+
+    private static void sleep(Duration delay, String description) throws DestinationOperationException {
+        try {
+            Thread.sleep(delay.toMillis());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new DestinationOperationException("Interrupted while waiting to retry: " + description, ex);
+        }
+    }
+
+    /**
+     * A call of the destination made by the thread that uploads the file
+     */
+    @FunctionalInterface
+    interface DestinationCall<T> {
+        T call() throws DestinationOperationException;
+    }
+}
@@ -0,0 +1,70 @@
+package io.accelerate.tracking.sync.upload;
+
+/**
+ * Decides the size of each part of a file.
+ *
+ * The size only depends on the part number, so the parts of a resumed upload are
+ * planned again exactly as they were when the upload started.
+ */
+@FunctionalInterface
+public interface PartSizePolicy {
+
+    //Maximum count of parts of an upload
+    int MAXIMUM_PART_COUNT = 10000;
+
+    //Part lengths are ints, 1 GB stays well below the 5 GB limit of a part
+    int MAXIMUM_PART_SIZE = 1024 * 1024 * 1024;
+
+    /**
+     * Size of the part when it is complete, only the last part of a file can be smaller
+     */
+    int getPartSize(int partNumber);
+
+    /**
+     * Policy of the uploads that are not configured with another one. The first 1000 parts
+     * keep the minimum size, so files above 48 GB can still be uploaded.
+     */
+    static PartSizePolicy defaultPolicy() {
+        return growing(MultipartUploadFile.MINIMUM_PART_SIZE, 1000);
+    }
+
+    /**
+     * Every part has the same size
+     */
+    static PartSizePolicy fixed(int partSize) {
+        validatePartSize(partSize);
+        return partNumber -> partSize;
+    }
+
+    /**
+     * The part size doubles every {@code partsPerStep} parts, up to {@link #MAXIMUM_PART_SIZE}.
+     * Small files keep small parts, large files need fewer requests.
+     */
+    static PartSizePolicy growing(int initialPartSize, int partsPerStep) {
+        validatePartSize(initialPartSize);
+        if (partsPerStep < 1) {
+            throw new IllegalArgumentException("Parts per step should be >= 1");
+        }
+        return partNumber -> {
+            int step = Math.min((partNumber - 1) / partsPerStep, 30);
+            return (int) Math.min((long) initialPartSize << step, MAXIMUM_PART_SIZE);
+        };
+    }
+
+    /**
+     * The smallest whole number of megabytes that fits a file of the expected size in {@link #MAXIMUM_PART_COUNT} parts
+     */
+    static PartSizePolicy forExpectedFileSize(long expectedFileSize) {
+        long megabyte = 1024 * 1024;
+        long partSize = (expectedFileSize + MAXIMUM_PART_COUNT - 1) / MAXIMUM_PART_COUNT;
+        partSize = (partSize + megabyte - 1) / megabyte * megabyte;
+        return fixed((int) Math.max(MultipartUploadFile.MINIMUM_PART_SIZE, Math.min(partSize, MAXIMUM_PART_SIZE)));
+    }
+
+    private static void validatePartSize(int partSize) {
+        if (partSize < MultipartUploadFile.MINIMUM_PART_SIZE || partSize > MAXIMUM_PART_SIZE) {
+            throw new IllegalArgumentException("Part size should be between "
+                    + MultipartUploadFile.MINIMUM_PART_SIZE + " and " + MAXIMUM_PART_SIZE);
+        }
+    }
+}
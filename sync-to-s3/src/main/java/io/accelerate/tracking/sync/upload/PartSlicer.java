@@ -0,0 +1,74 @@
+package io.accelerate.tracking.sync.upload;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Plans the parts of a file from a snapshot of its length.
+ *
+ * Every part is described by its offset and length, no bytes are read,
+ * so the parts can be read in any order. It is not thread safe.
+ */
+class PartSlicer {
+
+    private final PartSizePolicy partSizePolicy;
+
+    // Offset of each part by part number, added up once up to the highest part described
+    private long[] offsets = new long[]{0, 0};
+
+    private int lastOffsetPartNumber = 1;
+
+    PartSlicer(int partSize) {
+        if (partSize < 1) {
+            throw new IllegalArgumentException("Part size should be >= 1");
+        }
+        this.partSizePolicy = partNumber -> partSize;
+    }
+
+    PartSlicer(PartSizePolicy partSizePolicy) {
+        this.partSizePolicy = partSizePolicy;
+    }
+
+    /**
+     * Slices the bytes between {@code fromOffset} and {@code fileLength} into complete parts.
+     * The remaining bytes are sliced into a last, smaller, part only if {@code includeLastPart} is set.
+     */
+    Stream<FilePart> slice(long fromOffset, int firstPartNumber, long fileLength, boolean includeLastPart) {
+        List<FilePart> parts = new ArrayList<>();
+        long offset = fromOffset;
+        int partNumber = firstPartNumber;
+        int partSize = partSizePolicy.getPartSize(partNumber);
+        while (fileLength - offset >= partSize) {
+            parts.add(new FilePart(partNumber, offset, partSize, false));
+            offset += partSize;
+            partNumber++;
+            partSize = partSizePolicy.getPartSize(partNumber);
+        }
+        if (includeLastPart && fileLength > offset) {
+            parts.add(new FilePart(partNumber, offset, (int) (fileLength - offset), true));
+        }
+        return parts.stream();
+    }
+
+    /**
+     * Describes a complete part by its number
+     */
+    FilePart partAt(int partNumber) {
+        return new FilePart(partNumber, getOffset(partNumber), partSizePolicy.getPartSize(partNumber), false);
+    }
+
+    private long getOffset(int partNumber) {
+        if (partNumber > lastOffsetPartNumber) {
+            if (partNumber >= offsets.length) {
+                offsets = Arrays.copyOf(offsets, Math.max(partNumber + 1, offsets.length * 2));
+            }
+            for (int next = lastOffsetPartNumber + 1; next <= partNumber; next++) {
+                offsets[next] = offsets[next - 1] + partSizePolicy.getPartSize(next - 1);
+            }
+            lastOffsetPartNumber = partNumber;
+        }
+        return offsets[partNumber];
+    }
+}
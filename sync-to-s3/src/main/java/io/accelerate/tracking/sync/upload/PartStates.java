@@ -0,0 +1,143 @@
+package io.accelerate.tracking.sync.upload;
+
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartSummary;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The parts of a multipart upload confirmed by the destination.
+ *
+ * A bit per part number marks the confirmed parts, their ETags and sizes are kept in arrays
+ * indexed by part number, so an upload of 10000 parts needs no boxed numbers or part objects.
+ * It is not thread safe.
+ */
+class PartStates {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final BitSet confirmed = new BitSet();
+
+    private String[] eTags = new String[INITIAL_CAPACITY];
+
+    private long[] sizes = new long[INITIAL_CAPACITY];
+
+    private long uploadedSize;
+
+    /**
+     * Confirms the parts as they are iterated, they are not kept
+     */
+    static PartStates fromParts(Iterator<PartSummary> parts) {
+        PartStates partStates = new PartStates();
+        parts.forEachRemaining(part -> partStates.confirm(part.getPartNumber(), part.getETag(), part.getSize()));
+        return partStates;
+    }
+
+    PartStates copy() {
+        PartStates copy = new PartStates();
+        copy.confirmed.or(confirmed);
+        copy.eTags = eTags.clone();
+        copy.sizes = sizes.clone();
+        copy.uploadedSize = uploadedSize;
+        return copy;
+    }
+
+    void confirm(int partNumber, String eTag, long size) {
+        if (partNumber < 1) {
+            throw new IllegalArgumentException("Part number should be >= 1");
+        }
+        ensureCapacity(partNumber);
+        if (confirmed.get(partNumber)) {
+            uploadedSize -= sizes[partNumber];
+        }
+        confirmed.set(partNumber);
+        eTags[partNumber] = eTag;
+        sizes[partNumber] = size;
+        uploadedSize += size;
+    }
+
+    boolean isConfirmed(int partNumber) {
+        return confirmed.get(partNumber);
+    }
+
+    /**
+     * Size of a confirmed part
+     */
+    long getSize(int partNumber) {
+        return sizes[partNumber];
+    }
+
+    boolean isEmpty() {
+        return confirmed.isEmpty();
+    }
+
+    /**
+     * Highest confirmed part number, 0 when no part is confirmed
+     */
+    int getLastPartNumber() {
+        return Math.max(confirmed.length() - 1, 0);
+    }
+
+    int previousConfirmedPart(int partNumber) {
+        return confirmed.previousSetBit(partNumber);
+    }
+
+    int nextConfirmedPart(int partNumber) {
+        return confirmed.nextSetBit(partNumber);
+    }
+
+    long getUploadedSize() {
+        return uploadedSize;
+    }
+
+    /**
+     * Part numbers below the last confirmed part that are not confirmed
+     */
+    int[] getMissingPartNumbers() {
+        int lastPartNumber = getLastPartNumber();
+        int[] missing = new int[Math.max(lastPartNumber - confirmed.cardinality(), 0)];
+        int count = 0;
+        for (int partNumber = confirmed.nextClearBit(1); partNumber < lastPartNumber; partNumber = confirmed.nextClearBit(partNumber + 1)) {
+            missing[count++] = partNumber;
+        }
+        return missing;
+    }
+
+    /**
+     * The ETags of the confirmed parts, ordered by part number
+     */
+    List<PartETag> toPartETags() {
+        List<PartETag> partETags = new ArrayList<>(confirmed.cardinality());
+        for (int partNumber = confirmed.nextSetBit(1); partNumber >= 0; partNumber = confirmed.nextSetBit(partNumber + 1)) {
+            partETags.add(new PartETag(partNumber, eTags[partNumber]));
+        }
+        return partETags;
+    }
+
+    /**
+     * The confirmed parts as the destination would list them, ordered by part number
+     */
+    List<PartSummary> toPartSummaries() {
+        List<PartSummary> parts = new ArrayList<>(confirmed.cardinality());
+        for (int partNumber = confirmed.nextSetBit(1); partNumber >= 0; partNumber = confirmed.nextSetBit(partNumber + 1)) {
+            PartSummary part = new PartSummary();
+            part.setPartNumber(partNumber);
+            part.setETag(eTags[partNumber]);
+            part.setSize(sizes[partNumber]);
+            parts.add(part);
+        }
+        return parts;
+    }
+
+    private void ensureCapacity(int partNumber) {
+        if (partNumber >= eTags.length) {
+            int capacity = Math.max(partNumber + 1, eTags.length * 2);
+            eTags = Arrays.copyOf(eTags, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+        }
+    }
+}
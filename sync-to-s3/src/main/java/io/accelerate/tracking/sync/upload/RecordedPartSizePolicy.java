@@ -0,0 +1,31 @@
+package io.accelerate.tracking.sync.upload;
+
+/**
+ * Keeps the sizes of the parts of an upload that was planned with another policy.
+ *
+ * Uploaded parts keep their recorded size and the parts after the last uploaded one
+ * follow the configured policy. The recorded parts have no gap, the size of a missing
+ * part is never guessed, see {@link MultipartUploadHelper#getPartSizePolicy}.
+ */
+class RecordedPartSizePolicy implements PartSizePolicy {
+
+    private final PartStates recordedParts;
+
+    private final PartSizePolicy nextPartsPolicy;
+
+    RecordedPartSizePolicy(PartStates recordedParts, PartSizePolicy nextPartsPolicy) {
+        this.recordedParts = recordedParts;
+        this.nextPartsPolicy = nextPartsPolicy;
+    }
+
+    @Override
+    public int getPartSize(int partNumber) {
+        if (recordedParts.isEmpty() || partNumber > recordedParts.getLastPartNumber()) {
+            return nextPartsPolicy.getPartSize(partNumber);
+        }
+        if (!recordedParts.isConfirmed(partNumber)) {
+            throw new IllegalStateException("Size of part " + partNumber + " was not recorded");
+        }
+        return (int) recordedParts.getSize(partNumber);
+    }
+}
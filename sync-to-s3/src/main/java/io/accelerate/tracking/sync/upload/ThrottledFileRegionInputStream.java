@@ -0,0 +1,100 @@
+package io.accelerate.tracking.sync.upload;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Body of a part read from its file region, each chunk waits for the {@link UploadRateLimiter}.
+ *
+ * It supports mark and reset, so the client can send the part again. The bytes sent again
+ * are counted again.
+ */
+class ThrottledFileRegionInputStream extends InputStream {
+
+    private static final int MAX_CHUNK_SIZE = 16 * 1024;
+
+    private final FileChannel channel;
+
+    private final long end;
+
+    private final UploadRateLimiter rateLimiter;
+
+    private long position;
+
+    private long markedPosition;
+
+    ThrottledFileRegionInputStream(File file, long offset, long length, UploadRateLimiter rateLimiter) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.position = offset;
+        this.markedPosition = offset;
+        this.end = offset + length;
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int read = read(single, 0, 1);
+        return read < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int chunk = (int) Math.min(Math.min(len, MAX_CHUNK_SIZE), end - position);
+        if (chunk <= 0) {
+            return -1;
+        }
+        int read = channel.read(ByteBuffer.wrap(buffer, off, chunk), position);
+        if (read < 0) {
+            return -1;
+        }
+        position += read;
+        try {
+            rateLimiter.acquire(read);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to send the part");
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, end - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(end - position, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        markedPosition = position;
+    }
+
+    @Override
+    public synchronized void reset() {
+        position = markedPosition;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,21 @@
+package io.accelerate.tracking.sync.upload;
+
+import io.accelerate.tracking.sync.sync.destination.DestinationOperationException;
+
+/**
+ * Carries a {@link DestinationOperationException} out of a stream of part requests,
+ * it is turned back into the checked exception once the stream is consumed
+ */
+class UncheckedDestinationOperationException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    UncheckedDestinationOperationException(String message, DestinationOperationException cause) {
+        super(message, cause);
+    }
+
+    @Override
+    public synchronized DestinationOperationException getCause() {
+        return (DestinationOperationException) super.getCause();
+    }
+}
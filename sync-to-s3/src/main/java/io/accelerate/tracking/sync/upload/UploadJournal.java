@@ -0,0 +1,225 @@
+package io.accelerate.tracking.sync.upload;
+
+import org.slf4j.Logger;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Append-only binary log of the upload state changes.
+ *
+ * Each record is written as its length, the CRC32 of its payload and the payload.
+ * Reading stops at the first torn or corrupted record, which is what a crash in
+ * the middle of a write leaves behind. Records are buffered and written to disk in
+ * batches, the file is only forced to disk by records that are synced.
+ */
+class UploadJournal implements Closeable {
+    private static final Logger log = getLogger(UploadJournal.class);
+
+    private static final int HEADER_SIZE = 8;
+
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+
+    static final byte UPLOAD_STARTED = 1;
+
+    static final byte PART_UPLOADED = 2;
+
+    static final byte FILE_UPLOADED = 3;
+
+    static final byte FORGOTTEN = 4;
+
+    static class Record {
+        final byte type;
+        final String remotePath;
+        final String uploadId;
+        final int partNumber;
+        final String eTag;
+        final long size;
+        final long lastModified;
+
+        private Record(byte type, String remotePath, String uploadId, int partNumber, String eTag, long size, long lastModified) {
+            this.type = type;
+            this.remotePath = remotePath;
+            this.uploadId = uploadId;
+            this.partNumber = partNumber;
+            this.eTag = eTag;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        static Record uploadStarted(String remotePath, String uploadId) {
+            return new Record(UPLOAD_STARTED, remotePath, uploadId, 0, "", 0, 0);
+        }
+
+        static Record partUploaded(String remotePath, int partNumber, String eTag, long size) {
+            return new Record(PART_UPLOADED, remotePath, "", partNumber, eTag, size, 0);
+        }
+
+        static Record fileUploaded(String remotePath, long fileLength, long lastModified) {
+            return new Record(FILE_UPLOADED, remotePath, "", 0, "", fileLength, lastModified);
+        }
+
+        static Record forgotten(String remotePath) {
+            return new Record(FORGOTTEN, remotePath, "", 0, "", 0, 0);
+        }
+
+        private byte[] toBytes() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeByte(type);
+                out.writeUTF(remotePath);
+                out.writeUTF(uploadId);
+                out.writeInt(partNumber);
+                out.writeUTF(eTag);
+                out.writeLong(size);
+                out.writeLong(lastModified);
+            }
+            return bytes.toByteArray();
+        }
+
+        private static Record fromBytes(byte[] payload) throws IOException {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+                return new Record(in.readByte(), in.readUTF(), in.readUTF(), in.readInt(), in.readUTF(), in.readLong(), in.readLong());
+            }
+        }
+    }
+
+    private final FileChannel channel;
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    // Bytes of the records written and buffered
+    private long size;
+
+    private UploadJournal(FileChannel channel, long size) {
+        this.channel = channel;
+        this.size = size;
+    }
+
+    /**
+     * Reads the valid records of the journal, a missing journal has none
+     */
+    static List<Record> read(Path path) throws IOException {
+        List<Record> records = new ArrayList<>();
+        if (!Files.exists(path)) {
+            return records;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            while (true) {
+                Record record = readRecord(in);
+                if (record == null) {
+                    break;
+                }
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    private static Record readRecord(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            int checksum = in.readInt();
+            if (length <= 0 || length > MAX_RECORD_SIZE) {
+                log.warn("Upload journal ends with a corrupted record");
+                return null;
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            if (checksum(payload) != checksum) {
+                log.warn("Upload journal ends with a corrupted record");
+                return null;
+            }
+            return Record.fromBytes(payload);
+        } catch (EOFException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the journal with the given records and opens it for appending
+     */
+    static UploadJournal rewrite(Path path, List<Record> records) throws IOException {
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        long size = 0;
+        try (FileChannel temporary = FileChannel.open(temporaryPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Record record : records) {
+                byte[] bytes = encode(record);
+                writeFully(temporary, ByteBuffer.wrap(bytes));
+                size += bytes.length;
+            }
+            temporary.force(true);
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        return new UploadJournal(channel, size);
+    }
+
+    /**
+     * Appends the record, a synced record is on disk with all the records before it when this returns
+     */
+    synchronized void append(Record record, boolean sync) throws IOException {
+        byte[] bytes = encode(record);
+        buffer.write(bytes);
+        size += bytes.length;
+        if (sync || buffer.size() >= FLUSH_THRESHOLD) {
+            flush(sync);
+        }
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    private void flush(boolean force) throws IOException {
+        if (buffer.size() > 0) {
+            writeFully(channel, ByteBuffer.wrap(buffer.toByteArray()));
+            buffer.reset();
+        }
+        if (force) {
+            channel.force(false);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static byte[] encode(Record record) throws IOException {
+        byte[] payload = record.toBytes();
+        return ByteBuffer.allocate(HEADER_SIZE + payload.length)
+                .putInt(payload.length)
+                .putInt(checksum(payload))
+                .put(payload)
+                .array();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,92 @@
+package io.accelerate.tracking.sync.upload;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting the bytes per second sent by all the parts of all the files.
+ *
+ * Bytes are taken in small chunks as the part bodies are read, so the upload is spread
+ * evenly over time instead of sending whole parts at full speed then pausing. The bucket
+ * holds at most {@link #BURST_MILLIS} of bytes, a reader that takes more than available waits
+ * for its debt to be paid, which also queues the readers in the order they asked.
+ * The limit can be changed while uploading, it applies from the next chunk.
+ */
+public class UploadRateLimiter {
+
+    private static final long BURST_MILLIS = 50;
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    // 0 for no limit, read without the lock by the chunks of unlimited uploads
+    private volatile long bytesPerSecond;
+
+    private double availableBytes;
+
+    private long lastRefillNanos = System.nanoTime();
+
+    public UploadRateLimiter() {
+        this(0);
+    }
+
+    public UploadRateLimiter(long bytesPerSecond) {
+        checkBytesPerSecond(bytesPerSecond);
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * @param bytesPerSecond the new limit, 0 removes it
+     */
+    public synchronized void setBytesPerSecond(long bytesPerSecond) {
+        checkBytesPerSecond(bytesPerSecond);
+        refill(System.nanoTime());
+        this.bytesPerSecond = bytesPerSecond;
+        availableBytes = Math.min(availableBytes, getCapacity());
+    }
+
+    public synchronized long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public synchronized boolean isLimited() {
+        return bytesPerSecond > 0;
+    }
+
+    /**
+     * Blocks until the bytes can be sent
+     */
+    void acquire(int bytes) throws InterruptedException {
+        if (bytesPerSecond == 0) {
+            return;
+        }
+        long waitNanos;
+        synchronized (this) {
+            if (bytesPerSecond == 0) {
+                return;
+            }
+            refill(System.nanoTime());
+            availableBytes -= bytes;
+            waitNanos = availableBytes >= 0 ? 0 : (long) (-availableBytes * NANOS_PER_SECOND / bytesPerSecond);
+        }
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private static void checkBytesPerSecond(long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("Bytes per second should be >= 0");
+        }
+    }
+
+    private void refill(long nowNanos) {
+        long elapsedNanos = nowNanos - lastRefillNanos;
+        lastRefillNanos = nowNanos;
+        if (bytesPerSecond > 0) {
+            availableBytes = Math.min(getCapacity(), availableBytes + (double) elapsedNanos * bytesPerSecond / NANOS_PER_SECOND);
+        }
+    }
+
+    private double getCapacity() {
+        return (double) bytesPerSecond * BURST_MILLIS / 1000;
+    }
+}
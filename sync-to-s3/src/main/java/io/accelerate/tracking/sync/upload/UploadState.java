@@ -0,0 +1,96 @@
+package io.accelerate.tracking.sync.upload;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What is known locally about the multipart upload of one file: the upload id,
+ * the parts confirmed by the destination, and the file as it was when they were uploaded.
+ */
+class UploadState {
+
+    private final String uploadId;
+
+    private final PartStates confirmedParts;
+
+    private long fileLength = -1;
+
+    private long lastModified = -1;
+
+    // The last upload of the file ended, every part sent before it is known to be confirmed or not
+    private boolean settled;
+
+    UploadState(String uploadId) {
+        this(uploadId, new PartStates());
+    }
+
+    private UploadState(String uploadId, PartStates confirmedParts) {
+        this.uploadId = uploadId;
+        this.confirmedParts = confirmedParts;
+    }
+
+    static UploadState fromUploadedParts(UploadedParts uploadedParts) {
+        return new UploadState(uploadedParts.getUploadId(), uploadedParts.getPartStates().copy());
+    }
+
+    String getUploadId() {
+        return uploadId;
+    }
+
+    synchronized void confirmPart(int partNumber, String eTag, long size) {
+        confirmedParts.confirm(partNumber, eTag, size);
+        settled = false;
+    }
+
+    synchronized long getCommittedOffset() {
+        return confirmedParts.getUploadedSize();
+    }
+
+    synchronized int getNextPartNumber() {
+        return confirmedParts.getLastPartNumber() + 1;
+    }
+
+    synchronized void recordFile(long fileLength, long lastModified) {
+        this.fileLength = fileLength;
+        this.lastModified = lastModified;
+        settled = true;
+    }
+
+    synchronized boolean isSettled() {
+        return settled;
+    }
+
+    /**
+     * The records that rebuild this state
+     */
+    synchronized List<UploadJournal.Record> toJournalRecords(String remotePath) {
+        List<UploadJournal.Record> records = new ArrayList<>();
+        records.add(UploadJournal.Record.uploadStarted(remotePath, uploadId));
+        confirmedParts.toPartSummaries().forEach(part -> records.add(
+                UploadJournal.Record.partUploaded(remotePath, part.getPartNumber(), part.getETag(), part.getSize())));
+        if (settled) {
+            records.add(UploadJournal.Record.fileUploaded(remotePath, fileLength, lastModified));
+        }
+        return records;
+    }
+
+    /**
+     * The file can only have grown since it was recorded, a file that is shorter,
+     * or of the same length but modified, was replaced and the state no longer applies
+     */
+    synchronized boolean isConsistentWith(File file) {
+        long length = file.length();
+        if (length < getCommittedOffset() || length < fileLength) {
+            return false;
+        }
+        return length > fileLength || file.lastModified() == lastModified;
+    }
+
+    /**
+     * The state as the destination would list it
+     */
+    synchronized UploadedParts toUploadedParts() {
+        return new UploadedParts(uploadId, confirmedParts.copy());
+    }
+}
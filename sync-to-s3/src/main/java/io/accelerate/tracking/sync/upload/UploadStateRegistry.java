@@ -0,0 +1,220 @@
+package io.accelerate.tracking.sync.upload;
+
+import org.slf4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Upload state of the files, by remote path. Files uploaded again by the same process,
+ * such as growing recordings, resume from it instead of listing uploads and parts.
+ *
+ * A registry opened on a journal also survives restarts, see {@link #open(Path)}.
+ * A closed registry can no longer be used.
+ */
+public class UploadStateRegistry implements Closeable {
+    private static final Logger log = getLogger(UploadStateRegistry.class);
+
+    // Smallest journal that is compacted while uploading
+    static final long MINIMUM_COMPACTION_SIZE = 4 * 1024 * 1024;
+
+    private final Map<String, UploadState> states = new ConcurrentHashMap<>();
+
+    private Path journalPath;
+
+    private UploadJournal journal;
+
+    private long minimumCompactionSize;
+
+    // The journal is compacted when it grows past this size
+    private long compactionSize;
+
+    private volatile boolean closed;
+
+    /**
+     * Rebuilds the registry from the journal and keeps appending to it.
+     *
+     * Uploads that were interrupted in the middle of a round have an unknown outcome,
+     * they are left out so the destination is asked about them. The journal is
+     * compacted to the remaining state, and again each time it doubles in size
+     * past {@link #MINIMUM_COMPACTION_SIZE}.
+     */
+    public static UploadStateRegistry open(Path journalPath) throws IOException {
+        return open(journalPath, MINIMUM_COMPACTION_SIZE);
+    }
+
+    static UploadStateRegistry open(Path journalPath, long minimumCompactionSize) throws IOException {
+        UploadStateRegistry registry = new UploadStateRegistry();
+        UploadJournal.read(journalPath).forEach(registry::apply);
+        registry.states.values().removeIf(state -> !state.isSettled());
+
+        registry.journalPath = journalPath;
+        registry.minimumCompactionSize = minimumCompactionSize;
+        registry.journal = UploadJournal.rewrite(journalPath, registry.toJournalRecords());
+        registry.updateCompactionSize();
+        return registry;
+    }
+
+    private void apply(UploadJournal.Record record) {
+        switch (record.type) {
+            case UploadJournal.UPLOAD_STARTED -> states.put(record.remotePath, new UploadState(record.uploadId));
+            case UploadJournal.PART_UPLOADED -> {
+                UploadState state = states.get(record.remotePath);
+                if (state != null) {
+                    state.confirmPart(record.partNumber, record.eTag, record.size);
+                }
+            }
+            case UploadJournal.FILE_UPLOADED -> {
+                UploadState state = states.get(record.remotePath);
+                if (state != null) {
+                    state.recordFile(record.size, record.lastModified);
+                }
+            }
+            case UploadJournal.FORGOTTEN -> states.remove(record.remotePath);
+            default -> log.warn("Unknown upload journal record " + record.type);
+        }
+    }
+
+    /**
+     * Returns the parts of the upload in progress, or null when nothing consistent with the file is known
+     */
+    UploadedParts getUploadedParts(String remotePath, File file) {
+        checkOpen();
+        UploadState state = states.get(remotePath);
+        if (state == null) {
+            return null;
+        }
+        if (!state.isConsistentWith(file)) {
+            forget(remotePath);
+            return null;
+        }
+        return state.toUploadedParts();
+    }
+
+    /**
+     * Bytes of the file held by the destination in confirmed parts, 0 when no upload is known
+     */
+    public long getCommittedOffset(String remotePath) {
+        checkOpen();
+        UploadState state = states.get(remotePath);
+        return state == null ? 0 : state.getCommittedOffset();
+    }
+
+    /**
+     * Number of the part following the confirmed ones, 1 when no upload is known
+     */
+    public int getNextPartNumber(String remotePath) {
+        checkOpen();
+        UploadState state = states.get(remotePath);
+        return state == null ? 1 : state.getNextPartNumber();
+    }
+
+    void uploadStarted(String remotePath, String uploadId) {
+        record(UploadJournal.Record.uploadStarted(remotePath, uploadId), false);
+    }
+
+    synchronized void uploadResumed(String remotePath, UploadedParts uploadedParts) {
+        checkOpen();
+        UploadState state = UploadState.fromUploadedParts(uploadedParts);
+        states.put(remotePath, state);
+        state.toJournalRecords(remotePath).forEach(record -> appendToJournal(record, false));
+    }
+
+    void partUploaded(String remotePath, int partNumber, String eTag, long size) {
+        record(UploadJournal.Record.partUploaded(remotePath, partNumber, eTag, size), false);
+    }
+
+    /**
+     * Ends an upload round, the journal is synced so the round survives a crash
+     */
+    void fileUploaded(String remotePath, long fileLength, long lastModified) {
+        record(UploadJournal.Record.fileUploaded(remotePath, fileLength, lastModified), true);
+    }
+
+    /**
+     * The upload was committed, or its state can no longer be trusted
+     */
+    void forget(String remotePath) {
+        checkOpen();
+        if (states.containsKey(remotePath)) {
+            record(UploadJournal.Record.forgotten(remotePath), true);
+        }
+    }
+
+    // A compaction sees either none or all of the changes of a record
+    private synchronized void record(UploadJournal.Record record, boolean sync) {
+        checkOpen();
+        apply(record);
+        appendToJournal(record, sync);
+    }
+
+    private void appendToJournal(UploadJournal.Record record, boolean sync) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.append(record, sync);
+        } catch (IOException ex) {
+            log.error("Cannot write upload journal, upload state will be asked to the destination after a restart", ex);
+            return;
+        }
+        if (journal.size() > compactionSize) {
+            compact();
+        }
+    }
+
+    /**
+     * Replaces the journal with the records of the current state, a failed compaction
+     * keeps appending to the journal it has
+     */
+    private void compact() {
+        UploadJournal previousJournal = journal;
+        try {
+            journal = UploadJournal.rewrite(journalPath, toJournalRecords());
+        } catch (IOException ex) {
+            log.error("Cannot compact upload journal " + journalPath, ex);
+            updateCompactionSize();
+            return;
+        }
+        updateCompactionSize();
+        try {
+            // Its records are in the new journal, it only writes to the replaced file
+            previousJournal.close();
+        } catch (IOException ex) {
+            log.warn("Cannot close replaced upload journal", ex);
+        }
+    }
+
+    private List<UploadJournal.Record> toJournalRecords() {
+        List<UploadJournal.Record> records = new ArrayList<>();
+        states.forEach((remotePath, state) -> records.addAll(state.toJournalRecords(remotePath)));
+        return records;
+    }
+
+    private void updateCompactionSize() {
+        compactionSize = Math.max(minimumCompactionSize, 2 * journal.size());
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Upload state registry is closed");
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+}
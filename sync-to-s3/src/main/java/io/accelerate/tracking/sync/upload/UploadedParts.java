@@ -0,0 +1,50 @@
+package io.accelerate.tracking.sync.upload;
+
+import com.amazonaws.services.s3.model.PartSummary;
+
+import java.util.Iterator;
+
+/**
+ * The parts a destination holds for a multipart upload. They are folded into {@link PartStates}
+ * as they are listed, so a listing of 10000 parts keeps no part objects.
+ */
+public class UploadedParts {
+
+    private final String uploadId;
+
+    private final PartStates partStates;
+
+    UploadedParts(String uploadId, PartStates partStates) {
+        this.uploadId = uploadId;
+        this.partStates = partStates;
+    }
+
+    /**
+     * Consumes the parts one at a time, a paged listing is fetched page by page
+     */
+    public static UploadedParts fromParts(String uploadId, Iterator<PartSummary> parts) {
+        return new UploadedParts(uploadId, PartStates.fromParts(parts));
+    }
+
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    /**
+     * Highest uploaded part number, 0 when no part is uploaded
+     */
+    public int getLastPartNumber() {
+        return partStates.getLastPartNumber();
+    }
+
+    public long getUploadedSize() {
+        return partStates.getUploadedSize();
+    }
+
+    /**
+     * The parts as they were listed, a copy must be taken to track new ones
+     */
+    PartStates getPartStates() {
+        return partStates;
+    }
+}
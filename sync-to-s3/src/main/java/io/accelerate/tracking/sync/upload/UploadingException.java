@@ -2,6 +2,8 @@ package io.accelerate.tracking.sync.upload;
 
 public class UploadingException extends Exception {
 
+    private static final long serialVersionUID = 1L;
+
     public UploadingException(String message, Throwable cause) {
         super(message, cause);
     }
@@ -3,6 +3,18 @@ package io.accelerate.tracking.sync.helpers;
 import org.hamcrest.MatcherAssert;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.hamcrest.CoreMatchers.containsString;
 
@@ -22,4 +34,49 @@ public class ChecksumHelperTest {
         byte[] bytes = "Hello World!".getBytes();
         Assertions.assertEquals(ChecksumHelper.digest(bytes, "MD5"), "7Qdih1MuhjZehB6Sv8UNjA==");
     }
+
+    @Test
+    public void digestOfFileRegionMatchesDigestOfBytes(@TempDir Path tempDir) throws IOException {
+        byte[] bytes = new byte[200 * 1024];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        Path path = tempDir.resolve("file.bin");
+        Files.write(path, bytes);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Assertions.assertEquals(
+                    ChecksumHelper.digest(bytes, 1000, 150 * 1024, "MD5"),
+                    ChecksumHelper.digest(channel, 1000, 150 * 1024, "MD5"));
+        }
+    }
+
+    @Test
+    public void digestOfFileRegionFailsPastEndOfFile(@TempDir Path tempDir) throws IOException {
+        Path path = tempDir.resolve("file.bin");
+        Files.write(path, "Hello World!".getBytes());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Assertions.assertThrows(IOException.class, () -> ChecksumHelper.digest(channel, 0, 100, "MD5"));
+        }
+    }
+
+    @Test
+    public void digestsOfMoreThreadsThanPooledBuffersShouldMatch(@TempDir Path tempDir) throws Exception {
+        byte[] bytes = new byte[200 * 1024];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i * 31);
+        }
+        Path path = tempDir.resolve("file.bin");
+        Files.write(path, bytes);
+        String expected = ChecksumHelper.digest(bytes, 1000, 150 * 1024, "MD5");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<String>> digests = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                digests.add(executor.submit(() -> ChecksumHelper.digest(channel, 1000, 150 * 1024, "MD5")));
+            }
+            for (Future<String> digest : digests) {
+                Assertions.assertEquals(expected, digest.get());
+            }
+        }
+    }
 }
@@ -0,0 +1,38 @@
+package io.accelerate.tracking.sync.sync;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class DirectoryPruneRuleTest {
+
+    @Test
+    public void globShouldPruneMatchingDirectoriesAtAnyDepth() {
+        DirectoryPruneRule rule = DirectoryPruneRule.glob("archive_*");
+
+        Assertions.assertTrue(rule.prunes("archive_2023", 1));
+        Assertions.assertTrue(rule.prunes("archive_2023", 12));
+        Assertions.assertFalse(rule.prunes("recordings", 1));
+    }
+
+    @Test
+    public void upToDepthShouldOnlyPruneTheFirstLevels() {
+        DirectoryPruneRule rule = DirectoryPruneRule.glob("tmp").upToDepth(2);
+
+        Assertions.assertTrue(rule.prunes("tmp", 1));
+        Assertions.assertTrue(rule.prunes("tmp", 2));
+        Assertions.assertFalse(rule.prunes("tmp", 3));
+    }
+
+    @Test
+    public void hiddenShouldPruneDotDirectories() {
+        DirectoryPruneRule rule = DirectoryPruneRule.hidden();
+
+        Assertions.assertTrue(rule.prunes(".cache", 3));
+        Assertions.assertFalse(rule.prunes("cache", 3));
+    }
+
+    @Test
+    public void upToDepthShouldRejectInvalidDepth() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> DirectoryPruneRule.hidden().upToDepth(0));
+    }
+}
@@ -0,0 +1,79 @@
+package io.accelerate.tracking.sync.sync;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class DirectoryWalkerTest {
+
+    @TempDir
+    private Path tempDir;
+
+    private final Filters filters = Filters.getBuilder()
+            .include(Filters.endsWith(".mp4"))
+            .create();
+
+    @Test
+    public void walkShouldFindTheAcceptedFilesOfTheWholeTree() throws IOException {
+        createFiles("a.mp4", "a.mp4.lock", "notes.txt", "x/b.mp4", "x/y/z/c.mp4", "w/d.mp4");
+
+        List<String> files = walk(true);
+
+        Assertions.assertEquals(List.of("a.mp4", "w/d.mp4", "x/b.mp4", "x/y/z/c.mp4"), files);
+    }
+
+    @Test
+    public void walkShouldStayInTheFolderWhenNotRecursive() throws IOException {
+        createFiles("a.mp4", "x/b.mp4");
+
+        Assertions.assertEquals(List.of("a.mp4"), walk(false));
+    }
+
+    @Test
+    public void walkShouldNotReturnDirectories() throws IOException {
+        Files.createDirectories(tempDir.resolve("folder.mp4"));
+
+        Assertions.assertEquals(List.of(), walk(true));
+    }
+
+    @Test
+    public void walkShouldNotEnterPrunedDirectories() throws IOException {
+        createFiles("a.mp4", ".cache/b.mp4", "x/.cache/c.mp4", "tmp/d.mp4", "x/tmp/e.mp4");
+        filters.prune(DirectoryPruneRule.hidden());
+        filters.prune(DirectoryPruneRule.glob("tmp").upToDepth(1));
+
+        Assertions.assertEquals(List.of("a.mp4", "x/tmp/e.mp4"), walk(true));
+    }
+
+    @Test
+    public void walkShouldThrowWhenTheFolderDoesNotExist() {
+        DirectoryWalker walker = new DirectoryWalker(filters, true);
+
+        Assertions.assertThrows(IOException.class, () -> walker.walk(tempDir.resolve("missing"), file -> {}));
+    }
+
+    private List<String> walk(boolean recursive) throws IOException {
+        Queue<String> found = new ConcurrentLinkedQueue<>();
+        new DirectoryWalker(filters, recursive).walk(tempDir, found::add);
+        List<String> files = new ArrayList<>(found);
+        Collections.sort(files);
+        return files;
+    }
+
+    private void createFiles(String... relativePaths) throws IOException {
+        for (String relativePath : relativePaths) {
+            Path file = tempDir.resolve(relativePath);
+            Files.createDirectories(file.getParent());
+            Files.createFile(file);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package io.accelerate.tracking.sync.sync;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class FileNameFilterTest {
+
+    @Test
+    public void literalGlobsShouldBecomeNameSuffixOrPrefixRules() {
+        Assertions.assertEquals(FileNameFilter.Kind.NAME, FileNameFilter.fromGlob("recording.mp4").getKind());
+
+        FileNameFilter suffix = FileNameFilter.fromGlob("*.mp4");
+        Assertions.assertEquals(FileNameFilter.Kind.SUFFIX, suffix.getKind());
+        Assertions.assertEquals(".mp4", suffix.getValue());
+
+        FileNameFilter prefix = FileNameFilter.fromGlob("screen_*");
+        Assertions.assertEquals(FileNameFilter.Kind.PREFIX, prefix.getKind());
+        Assertions.assertEquals("screen_", prefix.getValue());
+    }
+
+    @Test
+    public void globShouldMatchWildcardsClassesAndAlternatives() {
+        FileNameFilter glob = FileNameFilter.fromGlob("screen_{1,2}_?[0-9][!a-z].m*");
+
+        Assertions.assertEquals(FileNameFilter.Kind.REGEX, glob.getKind());
+        Assertions.assertTrue(glob.matches("screen_1_a5X.mp4"));
+        Assertions.assertTrue(glob.matches("screen_2_b00.mov"));
+        Assertions.assertFalse(glob.matches("screen_3_a5X.mp4"));
+        Assertions.assertFalse(glob.matches("screen_1_a5x.mp4"));
+        Assertions.assertFalse(glob.matches("screen_1_5X.mp4"));
+    }
+
+    @Test
+    public void globShouldTreatRegexCharactersAsLiterals() {
+        FileNameFilter glob = FileNameFilter.fromGlob("a+b(1)*.txt");
+
+        Assertions.assertTrue(glob.matches("a+b(1) copy.txt"));
+        Assertions.assertFalse(glob.matches("aab1.txt"));
+    }
+
+    @Test
+    public void escapedWildcardShouldMatchItself() {
+        FileNameFilter glob = FileNameFilter.fromGlob("what\\?.txt");
+
+        Assertions.assertTrue(glob.matches("what?.txt"));
+        Assertions.assertFalse(glob.matches("whats.txt"));
+    }
+
+    @Test
+    public void unbalancedGlobShouldBeRejected() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> FileNameFilter.fromGlob("{a,b"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> FileNameFilter.fromGlob("[ab"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> FileNameFilter.fromGlob("a}"));
+    }
+}
@@ -0,0 +1,79 @@
+package io.accelerate.tracking.sync.sync;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FileNameMatcherTest {
+
+    @Test
+    public void matcherShouldAcceptWhatAnyOfItsFiltersAccepts() {
+        FileNameMatcher matcher = FileNameMatcher.compile(List.of(
+                Filters.name("exact.bin"),
+                Filters.startsWith("screen_"),
+                Filters.endsWith(".mp4"),
+                Filters.matches("^[0-9]{2}\\.log$"),
+                Filters.matches("(a)\\1\\.txt"),
+                (Path path) -> path.toString().contains("custom")));
+
+        Assertions.assertTrue(matches(matcher, "exact.bin"));
+        Assertions.assertTrue(matches(matcher, "screen_1.png"));
+        Assertions.assertTrue(matches(matcher, "video.mp4"));
+        Assertions.assertTrue(matches(matcher, "42.log"));
+        Assertions.assertTrue(matches(matcher, "aa.txt"));
+        Assertions.assertTrue(matches(matcher, "custom/file.dat"));
+        Assertions.assertFalse(matches(matcher, "exact.bin.old"));
+        Assertions.assertFalse(matches(matcher, "video.mp4.lock"));
+        Assertions.assertFalse(matches(matcher, "123.log"));
+        Assertions.assertFalse(matches(matcher, "ab.txt"));
+    }
+
+    @Test
+    public void regexesDefiningTheSameGroupNameShouldBothMatch() {
+        FileNameMatcher matcher = FileNameMatcher.compile(List.of(
+                Filters.matches("(?<x>a)\\.txt"),
+                Filters.matches("(?<x>b)\\.txt"),
+                Filters.matches("c\\.txt")));
+
+        Assertions.assertTrue(matches(matcher, "a.txt"));
+        Assertions.assertTrue(matches(matcher, "b.txt"));
+        Assertions.assertTrue(matches(matcher, "c.txt"));
+        Assertions.assertFalse(matches(matcher, "d.txt"));
+    }
+
+    @Test
+    public void emptyPrefixShouldMatchEveryName() {
+        FileNameMatcher matcher = FileNameMatcher.compile(List.of(Filters.startsWith("")));
+
+        Assertions.assertTrue(matches(matcher, "anything"));
+    }
+
+    @Test
+    public void noFilterShouldMatchNothing() {
+        FileNameMatcher matcher = FileNameMatcher.compile(List.of());
+
+        Assertions.assertFalse(matches(matcher, "anything"));
+    }
+
+    @Test
+    public void hundredsOfSuffixesShouldOnlyMatchTheirOwnExtensions() {
+        List<Filter> filters = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            filters.add(Filters.endsWith(".ext" + i));
+        }
+        FileNameMatcher matcher = FileNameMatcher.compile(filters);
+
+        Assertions.assertTrue(matches(matcher, "file.ext499"));
+        Assertions.assertTrue(matches(matcher, "file.ext42"));
+        Assertions.assertFalse(matches(matcher, "file.ext500"));
+    }
+
+    private static boolean matches(FileNameMatcher matcher, String path) {
+        Path file = Paths.get(path);
+        return matcher.matches(file, file.getFileName().toString());
+    }
+}
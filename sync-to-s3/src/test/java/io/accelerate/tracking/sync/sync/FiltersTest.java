@@ -119,4 +119,41 @@ public class FiltersTest {
         Assertions.assertFalse(filters2.accept(invalidPath1));
         Assertions.assertFalse(filters2.accept(invalidPath2));
     }
+
+    @Test
+    public void glob() {
+        Path validPath = Paths.get("src/test/resources/test_filter/screen_2_file.mp4");
+        Path invalidPath1 = Paths.get("src/test/resources/screen_2_file.mp4.lock");
+        Path invalidPath2 = Paths.get("src/test/resources/test_filter/screen_3_file.mp4");
+        Filters filters = Filters.getBuilder()
+                .include(Filters.glob("screen_{1,2}_*.mp4"))
+                .create();
+        Assertions.assertTrue(filters.accept(validPath));
+        Assertions.assertFalse(filters.accept(invalidPath1));
+        Assertions.assertFalse(filters.accept(invalidPath2));
+    }
+
+    @Test
+    public void filterAddedAfterAcceptShouldApply() {
+        Path path = Paths.get("src/test/resources/test_filter/file1.txt");
+        Filters filters = Filters.getBuilder()
+                .include(Filters.endsWith("txt"))
+                .create();
+        Assertions.assertTrue(filters.accept(path));
+
+        filters.exclude(Filters.startsWith("file"));
+        Assertions.assertFalse(filters.accept(path));
+    }
+
+    @Test
+    public void includesDefiningTheSameGroupNameShouldBeCreated() {
+        Filters filters = Filters.getBuilder()
+                .include(Filters.matches("(?<n>[0-9]{2})file\\.txt"))
+                .include(Filters.matches("(?<n>[0-9]{2})files\\.txt"))
+                .create();
+
+        Assertions.assertTrue(filters.accept(Paths.get("src/test/resources/test_filter/01file.txt")));
+        Assertions.assertTrue(filters.accept(Paths.get("src/test/resources/02files.txt")));
+        Assertions.assertFalse(filters.accept(Paths.get("src/test/resources/0files.txt")));
+    }
 }
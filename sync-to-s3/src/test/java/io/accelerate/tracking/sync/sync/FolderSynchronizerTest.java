@@ -1,29 +1,46 @@
 package io.accelerate.tracking.sync.sync;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import io.accelerate.tracking.sync.sync.destination.Destination;
 import io.accelerate.tracking.sync.sync.destination.DestinationOperationException;
 import io.accelerate.tracking.sync.upload.FileUploadingService;
 
 import java.io.File;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 public class FolderSynchronizerTest {
 
     @Test
-    public void synchronizeShouldHandleEmptyStringIfExceptionThrown() throws DestinationOperationException {
+    public void synchronizeShouldHandleEmptyStringIfExceptionThrown() throws Exception {
 
         Source source = mock(Source.class);
         when(source.isRecursive()).thenReturn(true);
+        doAnswer(invocation -> {
+            Consumer<String> consumer = invocation.getArgument(0);
+            consumer.accept("a.txt");
+            return null;
+        }).when(source).forEachFileToUpload(any(), any());
 
         Path path = mock(Path.class);
         when(path.toFile()).thenReturn(mock(File.class));
         when(source.getPath()).thenReturn(path);
 
         FileUploadingService fileUploadingService = mock(FileUploadingService.class);
-        doNothing().when(fileUploadingService).upload(any(), anyString());
+        doReturn(true).when(fileUploadingService).upload(any(), anyString(), any());
 
         Destination destination = mock(Destination.class);
         doThrow(new DestinationOperationException("Message"))
@@ -34,5 +51,98 @@ public class FolderSynchronizerTest {
 
         FolderSynchronizer synchronizer = new FolderSynchronizer(source, fileUploadingService);
         synchronizer.synchronize();
+
+        verify(fileUploadingService, never()).upload(any(), anyString(), any());
+    }
+
+    @Test
+    public void synchronizeShouldUploadFilesConcurrently() throws Exception {
+        List<String> files = Arrays.asList("a.txt", "b.txt", "c.txt");
+        Source source = mock(Source.class);
+        Path path = mock(Path.class);
+        when(path.toFile()).thenReturn(new File("."));
+        when(source.getPath()).thenReturn(path);
+        doAnswer(invocation -> {
+            Consumer<String> consumer = invocation.getArgument(0);
+            files.forEach(consumer);
+            return null;
+        }).when(source).forEachFileToUpload(any(), any());
+
+        Destination destination = mock(Destination.class);
+        when(destination.filterUploadableFiles(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(destination.filterMoreUploadableFiles(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        // Every upload waits until all of them have been started, a sequential run would never finish
+        CountDownLatch allFilesStarted = new CountDownLatch(files.size());
+        FileUploadingService fileUploadingService = mock(FileUploadingService.class);
+        when(fileUploadingService.getDestination()).thenReturn(destination);
+        doAnswer(invocation -> {
+            allFilesStarted.countDown();
+            assertTrue(allFilesStarted.await(5, TimeUnit.SECONDS));
+            return true;
+        }).when(fileUploadingService).upload(any(), anyString(), any());
+
+        FolderSynchronizer synchronizer = new FolderSynchronizer(source, fileUploadingService);
+        synchronizer.setMaxConcurrentFiles(files.size());
+        synchronizer.synchronize();
+
+        files.forEach(file -> verify(fileUploadingService).upload(any(), eq(file), any(LockIndex.class)));
+    }
+
+    @Test
+    public void synchronizeShouldStartUploadingBeforeTheScanIsFinished() throws Exception {
+        Source source = mock(Source.class);
+        Path path = mock(Path.class);
+        when(path.toFile()).thenReturn(new File("."));
+        when(source.getPath()).thenReturn(path);
+        CountDownLatch firstUploadStarted = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            Consumer<String> consumer = invocation.getArgument(0);
+            consumer.accept("a.txt");
+            assertTrue(firstUploadStarted.await(5, TimeUnit.SECONDS));
+            consumer.accept("b.txt");
+            return null;
+        }).when(source).forEachFileToUpload(any(), any());
+
+        Destination destination = mock(Destination.class);
+        when(destination.filterUploadableFiles(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(destination.filterMoreUploadableFiles(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        FileUploadingService fileUploadingService = mock(FileUploadingService.class);
+        when(fileUploadingService.getDestination()).thenReturn(destination);
+        doAnswer(invocation -> {
+            firstUploadStarted.countDown();
+            return true;
+        }).when(fileUploadingService).upload(any(), anyString(), any());
+
+        new FolderSynchronizer(source, fileUploadingService).synchronize();
+
+        verify(fileUploadingService).upload(any(), eq("a.txt"), any());
+        verify(fileUploadingService).upload(any(), eq("b.txt"), any());
+        verify(destination).filterUploadableFiles(Collections.singletonList("a.txt"));
+        verify(destination).filterMoreUploadableFiles(Collections.singletonList("b.txt"));
+    }
+
+    @Test
+    public void synchronizeShouldPassTheLocksSeenByTheScan(@TempDir Path folder) throws Exception {
+        Files.createFile(folder.resolve("a.txt"));
+        Files.createFile(folder.resolve("a.txt.lock"));
+        Files.createFile(folder.resolve("b.txt"));
+        Source source = Source.getBuilder(folder)
+                .setFilters(Filters.getBuilder().include(Filters.endsWith("txt")).create())
+                .create();
+        Destination destination = mock(Destination.class);
+        when(destination.filterUploadableFiles(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(destination.filterMoreUploadableFiles(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        FileUploadingService fileUploadingService = mock(FileUploadingService.class);
+        when(fileUploadingService.getDestination()).thenReturn(destination);
+        Map<String, Boolean> locked = new ConcurrentHashMap<>();
+        doAnswer(invocation -> {
+            locked.put(invocation.getArgument(1), ((LockIndex) invocation.getArgument(2)).isLocked(invocation.getArgument(0)));
+            return true;
+        }).when(fileUploadingService).upload(any(), anyString(), any());
+
+        new FolderSynchronizer(source, fileUploadingService).synchronize();
+
+        assertEquals(Map.of("a.txt", true, "b.txt", false), locked);
     }
 }
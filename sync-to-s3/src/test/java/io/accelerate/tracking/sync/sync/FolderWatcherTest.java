@@ -0,0 +1,181 @@
+package io.accelerate.tracking.sync.sync;
+
+import io.accelerate.tracking.sync.sync.destination.Destination;
+import io.accelerate.tracking.sync.upload.FileUploadingService;
+import io.accelerate.tracking.sync.upload.PartSizePolicy;
+import io.accelerate.tracking.sync.upload.UploadStateRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class FolderWatcherTest {
+
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    @TempDir
+    private Path tempDir;
+
+    // Offset the destination confirmed for recording.mp4, the mocked uploads confirm every full part
+    private final AtomicLong committedOffset = new AtomicLong();
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void watchShouldUploadFullPartsAndCommitOnceUnlocked(boolean watchServiceEnabled) throws Exception {
+        Path file = tempDir.resolve("recording.mp4");
+        Path lockFile = tempDir.resolve("recording.mp4.lock");
+        Files.createFile(lockFile);
+        Files.write(file, new byte[PART_SIZE / 2]);
+
+        FileUploadingService fileUploadingService = createFileUploadingService();
+        FolderWatcher watcher = createWatcher(fileUploadingService);
+        watcher.setWatchServiceEnabled(watchServiceEnabled);
+        Thread watchThread = new Thread(watcher::watch);
+        watchThread.start();
+        try {
+            Thread.sleep(500);
+            verify(fileUploadingService, never()).upload(any(), eq("recording.mp4"));
+
+            Files.write(file, new byte[PART_SIZE], StandardOpenOption.APPEND);
+            verify(fileUploadingService, timeout(5000).times(1)).upload(any(), eq("recording.mp4"));
+
+            Files.delete(lockFile);
+            verify(fileUploadingService, timeout(5000).times(2)).upload(any(), eq("recording.mp4"));
+        } finally {
+            watcher.stop();
+            watchThread.join(5000);
+        }
+    }
+
+    @Test
+    public void watchShouldUploadOnlyWhenThePartAfterTheCommittedOffsetCanBeFilled() throws Exception {
+        Path file = tempDir.resolve("recording.mp4");
+        Files.createFile(tempDir.resolve("recording.mp4.lock"));
+        Files.write(file, new byte[PART_SIZE + PART_SIZE / 2]);
+        committedOffset.set(PART_SIZE);
+
+        FileUploadingService fileUploadingService = createFileUploadingService();
+        FolderWatcher watcher = createWatcher(fileUploadingService);
+        watcher.setWatchServiceEnabled(false);
+        Thread watchThread = new Thread(watcher::watch);
+        watchThread.start();
+        try {
+            Thread.sleep(500);
+            verify(fileUploadingService, never()).upload(any(), eq("recording.mp4"));
+
+            Files.write(file, new byte[PART_SIZE / 2], StandardOpenOption.APPEND);
+            verify(fileUploadingService, timeout(5000).times(1)).upload(any(), eq("recording.mp4"));
+
+            Thread.sleep(500);
+            verify(fileUploadingService, times(1)).upload(any(), eq("recording.mp4"));
+        } finally {
+            watcher.stop();
+            watchThread.join(5000);
+        }
+    }
+
+    @Test
+    public void watchShouldNotUploadFinishedFilesAgain() throws Exception {
+        Path file = tempDir.resolve("recording.mp4");
+        Files.write(file, new byte[10]);
+
+        FileUploadingService fileUploadingService = createFileUploadingService();
+        FolderWatcher watcher = createWatcher(fileUploadingService);
+        Thread watchThread = new Thread(watcher::watch);
+        watchThread.start();
+        try {
+            verify(fileUploadingService, timeout(5000).times(1)).upload(any(), eq("recording.mp4"));
+
+            Files.write(file, new byte[10], StandardOpenOption.APPEND);
+            Thread.sleep(500);
+            verify(fileUploadingService, times(1)).upload(any(), eq("recording.mp4"));
+        } finally {
+            watcher.stop();
+            watchThread.join(5000);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void watchShouldNotCommitAFileCreatedBeforeItsLockFile(boolean watchServiceEnabled) throws Exception {
+        FileUploadingService fileUploadingService = createFileUploadingService();
+        FolderWatcher watcher = createWatcher(fileUploadingService);
+        watcher.setWatchServiceEnabled(watchServiceEnabled);
+        Thread watchThread = new Thread(watcher::watch);
+        watchThread.start();
+        try {
+            Thread.sleep(300);
+            Files.write(tempDir.resolve("recording.mp4"), new byte[10]);
+            Files.createFile(tempDir.resolve("recording.mp4.lock"));
+
+            Thread.sleep(500);
+            verify(fileUploadingService, never()).upload(any(), eq("recording.mp4"));
+        } finally {
+            watcher.stop();
+            watchThread.join(5000);
+        }
+    }
+
+    @Test
+    public void watchShouldUploadAFailedFileAgain() throws Exception {
+        Path file = tempDir.resolve("recording.mp4");
+        Files.write(file, new byte[10]);
+
+        FileUploadingService fileUploadingService = createFileUploadingService();
+        when(fileUploadingService.upload(any(), eq("recording.mp4"))).thenReturn(false, true);
+        FolderWatcher watcher = createWatcher(fileUploadingService);
+        watcher.setWatchServiceEnabled(false);
+        Thread watchThread = new Thread(watcher::watch);
+        watchThread.start();
+        try {
+            verify(fileUploadingService, timeout(5000).times(2)).upload(any(), eq("recording.mp4"));
+
+            Thread.sleep(500);
+            verify(fileUploadingService, times(2)).upload(any(), eq("recording.mp4"));
+        } finally {
+            watcher.stop();
+            watchThread.join(5000);
+        }
+    }
+
+    private FileUploadingService createFileUploadingService() throws Exception {
+        Destination destination = mock(Destination.class);
+        when(destination.filterUploadableFiles(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+        FileUploadingService fileUploadingService = mock(FileUploadingService.class);
+        when(fileUploadingService.getDestination()).thenReturn(destination);
+        when(fileUploadingService.upload(any(), anyString())).thenAnswer(invocation -> {
+            long length = invocation.getArgument(0, File.class).length();
+            committedOffset.set(length / PART_SIZE * PART_SIZE);
+            return true;
+        });
+        return fileUploadingService;
+    }
+
+    private FolderWatcher createWatcher(FileUploadingService fileUploadingService) {
+        Source source = Source.getBuilder(tempDir)
+                .setFilters(Filters.getBuilder().include(Filters.endsWith(".mp4")).create())
+                .create();
+        FolderSynchronizer folderSynchronizer = new FolderSynchronizer(source, fileUploadingService);
+        FolderWatcher watcher = new FolderWatcher(source, folderSynchronizer, Duration.ofMillis(100), Duration.ofMinutes(10));
+        watcher.setUploadProgress(createUploadStateRegistry(), PartSizePolicy.fixed(PART_SIZE));
+        return watcher;
+    }
+
+    private UploadStateRegistry createUploadStateRegistry() {
+        UploadStateRegistry registry = mock(UploadStateRegistry.class);
+        when(registry.getCommittedOffset("recording.mp4")).thenAnswer(invocation -> committedOffset.get());
+        when(registry.getNextPartNumber("recording.mp4")).thenAnswer(invocation -> (int) (committedOffset.get() / PART_SIZE) + 1);
+        return registry;
+    }
+}
@@ -0,0 +1,62 @@
+package io.accelerate.tracking.sync.sync;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+
+public class LockIndexTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    public void scanShouldRecordTheLockedFilesOfEveryDirectory() throws IOException {
+        createFiles("a.txt", "a.txt.lock", "b.txt", "sub/c.txt", "sub/c.txt.lock", "sub/d.txt");
+        Source source = Source.getBuilder(tempDir)
+                .setRecursive(true)
+                .setFilters(Filters.getBuilder().include(Filters.endsWith("txt")).create())
+                .create();
+        LockIndex lockIndex = new LockIndex();
+
+        source.getFilesToUpload(lockIndex);
+
+        Assertions.assertEquals(2, lockIndex.getLockedFileCount());
+        Assertions.assertTrue(lockIndex.isLocked(tempDir.resolve("a.txt").toFile()));
+        Assertions.assertFalse(lockIndex.isLocked(tempDir.resolve("b.txt").toFile()));
+        Assertions.assertTrue(lockIndex.isLocked(tempDir.resolve("sub/c.txt").toFile()));
+        Assertions.assertFalse(lockIndex.isLocked(tempDir.resolve("sub/d.txt").toFile()));
+    }
+
+    @Test
+    public void indexShouldBeASnapshotOfTheScan() throws IOException {
+        createFiles("a.txt", "a.txt.lock");
+        LockIndex lockIndex = new LockIndex();
+        lockIndex.addDirectory(tempDir, Set.of("a.txt"));
+
+        Files.delete(tempDir.resolve("a.txt.lock"));
+
+        Assertions.assertTrue(lockIndex.isLocked(tempDir.resolve("a.txt").toFile()));
+    }
+
+    @Test
+    public void fileOfAnotherDirectoryShouldBeCheckedOnDisk() throws IOException {
+        createFiles("other/a.txt", "other/a.txt.lock", "other/b.txt");
+        LockIndex lockIndex = new LockIndex();
+
+        Assertions.assertTrue(lockIndex.isLocked(tempDir.resolve("other/a.txt").toFile()));
+        Assertions.assertFalse(lockIndex.isLocked(tempDir.resolve("other/b.txt").toFile()));
+    }
+
+    private void createFiles(String... relativePaths) throws IOException {
+        for (String relativePath : relativePaths) {
+            Path file = tempDir.resolve(relativePath);
+            Files.createDirectories(file.getParent());
+            Files.createFile(file);
+        }
+    }
+}
@@ -3,13 +3,19 @@ package io.accelerate.tracking.sync.sync;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.BiPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.mockito.Mockito.mock;
 
@@ -19,6 +25,9 @@ public class SourceTest {
     private Path notEmptyDirPath;
     private Filters filters;
 
+    @TempDir
+    private Path tempDir;
+
     @BeforeEach
     public void setUp() throws Exception {
 
@@ -113,4 +122,52 @@ public class SourceTest {
         List<String> pathList = source.getFilesToUpload();
         Assertions.assertTrue(pathList.isEmpty());
     }
+
+    @Test
+    public void acceptDirectoryShouldRejectDirectoriesBelowAPrunedOne() {
+        Filters filters = Filters.getBuilder()
+                .include(Filters.endsWith("txt"))
+                .prune(DirectoryPruneRule.glob("archive"))
+                .create();
+        Source source = Source.getBuilder(notEmptyDirPath)
+                .setRecursive(true)
+                .setFilters(filters)
+                .create();
+
+        Assertions.assertTrue(source.acceptDirectory(notEmptyDirPath));
+        Assertions.assertTrue(source.acceptDirectory(notEmptyDirPath.resolve("subdir")));
+        Assertions.assertFalse(source.acceptDirectory(notEmptyDirPath.resolve("archive")));
+        Assertions.assertFalse(source.acceptDirectory(notEmptyDirPath.resolve("archive/2023")));
+    }
+
+    @Test
+    public void getFilesToUploadShouldFindTheSameFilesAsFilesFind() throws IOException {
+        Filters recordings = Filters.getBuilder()
+                .include(Filters.endsWith(".mp4"))
+                .create();
+        for (int session = 0; session < 2; session++) {
+            for (int day = 0; day < 3; day++) {
+                Path directory = Files.createDirectories(tempDir.resolve("session_" + session).resolve("day_" + day).resolve("screen"));
+                for (int recording = 0; recording < 4; recording++) {
+                    Files.createFile(directory.resolve("recording_" + recording + ".mp4"));
+                    Files.createFile(directory.resolve("recording_" + recording + ".mp4.lock"));
+                }
+            }
+        }
+        Source source = Source.getBuilder(tempDir)
+                .setRecursive(true)
+                .setFilters(recordings)
+                .create();
+
+        List<String> pathList = source.getFilesToUpload();
+
+        BiPredicate<Path, BasicFileAttributes> matcher = (filePath, fileAttr) -> fileAttr.isRegularFile() && recordings.accept(filePath);
+        try (Stream<Path> paths = Files.find(tempDir, Integer.MAX_VALUE, matcher)) {
+            List<String> expected = paths.map(filePath -> tempDir.toFile().toURI().relativize(filePath.toFile().toURI()).getPath())
+                    .sorted()
+                    .collect(Collectors.toList());
+            Assertions.assertEquals(24, pathList.size());
+            Assertions.assertEquals(expected, pathList);
+        }
+    }
 }
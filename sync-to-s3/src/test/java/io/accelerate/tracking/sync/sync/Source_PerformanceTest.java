@@ -0,0 +1,90 @@
+package io.accelerate.tracking.sync.sync;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Times the parallel walker against the single {@link Files#find} and URI relativization
+ * the scan used before, on a deep tree of recordings with their lock files
+ */
+@Tag("performance")
+public class Source_PerformanceTest {
+    private static final Logger log = getLogger(Source_PerformanceTest.class);
+
+    private static final int MEASURED_ROUNDS = 5;
+
+    @TempDir
+    private Path tempDir;
+
+    private final Filters filters = Filters.getBuilder()
+            .include(Filters.endsWith(".mp4"))
+            .create();
+
+    @Test
+    public void walkerShouldScanADeepTreeOfRecordings() throws Exception {
+        createTree(10, 20, 25);
+        Source source = Source.getBuilder(tempDir)
+                .setRecursive(true)
+                .setFilters(filters)
+                .create();
+
+        long walkerMillis = measureBestMillis(source::getFilesToUpload);
+        long findMillis = measureBestMillis(this::findWithFilesFind);
+
+        log.info("Scan of " + source.getFilesToUpload().size() + " recordings and their lock files: walker "
+                + walkerMillis + " ms, Files.find " + findMillis + " ms");
+        Assertions.assertEquals(findWithFilesFind(), source.getFilesToUpload());
+    }
+
+    /**
+     * Best time of the measured rounds, the first round only warms up the code and the file system cache
+     */
+    private static long measureBestMillis(Callable<List<String>> scan) throws Exception {
+        long bestNanos = Long.MAX_VALUE;
+        for (int round = 0; round <= MEASURED_ROUNDS; round++) {
+            long start = System.nanoTime();
+            Assertions.assertEquals(5000, scan.call().size());
+            if (round > 0) {
+                bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+            }
+        }
+        return TimeUnit.NANOSECONDS.toMillis(bestNanos);
+    }
+
+    private List<String> findWithFilesFind() throws IOException {
+        BiPredicate<Path, BasicFileAttributes> matcher = (filePath, fileAttr) -> fileAttr.isRegularFile() && filters.accept(filePath);
+        try (Stream<Path> paths = Files.find(tempDir, Integer.MAX_VALUE, matcher)) {
+            return paths.map(filePath -> tempDir.toFile().toURI().relativize(filePath.toFile().toURI()).getPath())
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private void createTree(int folders, int subfolders, int recordings) throws IOException {
+        for (int folder = 0; folder < folders; folder++) {
+            for (int subfolder = 0; subfolder < subfolders; subfolder++) {
+                Path directory = Files.createDirectories(tempDir.resolve("session_" + folder).resolve("day_" + subfolder).resolve("screen"));
+                for (int recording = 0; recording < recordings; recording++) {
+                    Files.createFile(directory.resolve("recording_" + recording + ".mp4"));
+                    Files.createFile(directory.resolve("recording_" + recording + ".mp4.lock"));
+                }
+            }
+        }
+    }
+}
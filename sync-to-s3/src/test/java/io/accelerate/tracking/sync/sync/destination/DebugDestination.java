@@ -1,10 +1,10 @@
 package io.accelerate.tracking.sync.sync.destination;
 
 import com.amazonaws.services.s3.model.PartETag;
-import com.amazonaws.services.s3.model.PartListing;
 import com.amazonaws.services.s3.model.UploadPartRequest;
 import org.slf4j.Logger;
 import io.accelerate.tracking.sync.upload.MultipartUploadResult;
+import io.accelerate.tracking.sync.upload.UploadedParts;
 
 import java.util.List;
 
@@ -42,9 +42,9 @@ public class DebugDestination implements Destination {
     }
 
     @Override
-    public PartListing getAlreadyUploadedParts(String remotePath) throws DestinationOperationException {
+    public UploadedParts getAlreadyUploadedParts(String remotePath) throws DestinationOperationException {
         log.debug("getAlreadyUploadedParts: START");
-        PartListing result = destination.getAlreadyUploadedParts(remotePath);
+        UploadedParts result = destination.getAlreadyUploadedParts(remotePath);
         log.debug("getAlreadyUploadedParts: FINISH");
         return result;
     }
@@ -64,6 +64,13 @@ public class DebugDestination implements Destination {
         log.debug("commitMultipartUpload: FINISH");
     }
 
+    @Override
+    public void abortMultipartUpload(String remotePath, String uploadId) throws DestinationOperationException {
+        log.debug("abortMultipartUpload: START");
+        destination.abortMultipartUpload(remotePath, uploadId);
+        log.debug("abortMultipartUpload: FINISH");
+    }
+
     @Override
     public UploadPartRequest createUploadPartRequest(String remotePath) throws DestinationOperationException {
         log.debug("createUploadPartRequest: START");
@@ -80,4 +87,12 @@ public class DebugDestination implements Destination {
         return r;
     }
 
+    @Override
+    public List<String> filterMoreUploadableFiles(List<String> relativePaths) throws DestinationOperationException {
+        log.debug("filterMoreUploadableFiles: START");
+        List<String> r = destination.filterMoreUploadableFiles(relativePaths);
+        log.debug("filterMoreUploadableFiles: FINISH");
+        return r;
+    }
+
 }
@@ -0,0 +1,56 @@
+package io.accelerate.tracking.sync.sync.destination;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.ListPartsRequest;
+import com.amazonaws.services.s3.model.PartListing;
+import com.amazonaws.services.s3.model.PartSummary;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.NoSuchElementException;
+
+import static org.mockito.Mockito.*;
+
+public class PartListingIteratorTest {
+
+    @Test
+    public void shouldOnlyFetchTheNextPageOnceThePreviousOneIsConsumed() {
+        AmazonS3 awsClient = mock(AmazonS3.class);
+        PartListing firstPage = createPage(1);
+        firstPage.setTruncated(true);
+        firstPage.setNextPartNumberMarker(1);
+        when(awsClient.listParts(any())).thenReturn(firstPage).thenReturn(createPage(2));
+        PartListingIterator iterator = new PartListingIterator(awsClient, new ListPartsRequest("bucket", "key", "upload"));
+
+        Assertions.assertEquals(1, iterator.next().getPartNumber());
+        verify(awsClient, times(1)).listParts(any());
+
+        Assertions.assertEquals(2, iterator.next().getPartNumber());
+        Assertions.assertFalse(iterator.hasNext());
+        verify(awsClient, times(2)).listParts(any());
+        Assertions.assertThrows(NoSuchElementException.class, iterator::next);
+    }
+
+    @Test
+    public void shouldStopWhenATruncatedPageHasNoNextMarker() {
+        AmazonS3 awsClient = mock(AmazonS3.class);
+        PartListing page = createPage(1);
+        page.setTruncated(true);
+        when(awsClient.listParts(any())).thenReturn(page);
+        PartListingIterator iterator = new PartListingIterator(awsClient, new ListPartsRequest("bucket", "key", "upload"));
+
+        iterator.next();
+
+        Assertions.assertFalse(iterator.hasNext());
+        verify(awsClient, times(1)).listParts(any());
+    }
+
+    private static PartListing createPage(int partNumber) {
+        PartSummary part = new PartSummary();
+        part.setPartNumber(partNumber);
+        PartListing page = new PartListing();
+        page.setParts(Collections.singletonList(part));
+        return page;
+    }
+}
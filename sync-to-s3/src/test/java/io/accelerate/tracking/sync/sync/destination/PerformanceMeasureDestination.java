@@ -1,72 +1,85 @@
 package io.accelerate.tracking.sync.sync.destination;
 
 import com.amazonaws.services.s3.model.PartETag;
-import com.amazonaws.services.s3.model.PartListing;
 import com.amazonaws.services.s3.model.UploadPartRequest;
 import io.accelerate.tracking.sync.upload.MultipartUploadResult;
+import io.accelerate.tracking.sync.upload.UploadedParts;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class PerformanceMeasureDestination implements Destination {
     private final Destination destination;
 
-    private int performanceScore = 0;
+    private final AtomicInteger performanceScore = new AtomicInteger();
 
     public PerformanceMeasureDestination(Destination destination) {
         this.destination = destination;
     }
 
     public int getPerformanceScore() {
-        return performanceScore;
+        return performanceScore.get();
     }
 
     @Override
     public void startS3SyncSession() throws DestinationOperationException {
-        performanceScore += 2;
+        performanceScore.addAndGet(2);
         destination.startS3SyncSession();
     }
 
     @Override
     public void stopS3SyncSession() throws DestinationOperationException {
-        performanceScore += 2;
+        performanceScore.addAndGet(2);
         destination.stopS3SyncSession();
     }
 
     @Override
     public String initUploading(String remotePath) throws DestinationOperationException {
-        performanceScore += 1;
+        performanceScore.addAndGet(1);
         return destination.initUploading(remotePath);
     }
 
     @Override
-    public PartListing getAlreadyUploadedParts(String remotePath) throws DestinationOperationException {
-        performanceScore += 1;
+    public UploadedParts getAlreadyUploadedParts(String remotePath) throws DestinationOperationException {
+        performanceScore.addAndGet(1);
         return destination.getAlreadyUploadedParts(remotePath);
     }
 
     @Override
     public MultipartUploadResult uploadMultiPart(UploadPartRequest request) throws DestinationOperationException {
-        performanceScore += 1000;
+        performanceScore.addAndGet(1000);
         return destination.uploadMultiPart(request);
     }
 
     @Override
     public void commitMultipartUpload(String remotePath, List<PartETag> eTags, String uploadId) throws DestinationOperationException {
-        performanceScore += 1;
+        performanceScore.addAndGet(1);
         destination.commitMultipartUpload(remotePath, eTags, uploadId);
     }
 
+    @Override
+    public void abortMultipartUpload(String remotePath, String uploadId) throws DestinationOperationException {
+        performanceScore.addAndGet(1);
+        destination.abortMultipartUpload(remotePath, uploadId);
+    }
+
     @Override
     public UploadPartRequest createUploadPartRequest(String remotePath) throws DestinationOperationException {
-        performanceScore += 0;
+        performanceScore.addAndGet(0);
         return destination.createUploadPartRequest(remotePath);
     }
 
     @Override
     public List<String> filterUploadableFiles(List<String> relativePaths) throws DestinationOperationException {
-        performanceScore += 1;
+        performanceScore.addAndGet(1);
         return destination.filterUploadableFiles(relativePaths);
     }
 
+    @Override
+    public List<String> filterMoreUploadableFiles(List<String> relativePaths) throws DestinationOperationException {
+        performanceScore.addAndGet(1);
+        return destination.filterMoreUploadableFiles(relativePaths);
+    }
+
 }
@@ -0,0 +1,46 @@
+package io.accelerate.tracking.sync.sync.destination;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class RemoteKeyIndexTest {
+
+    @Test
+    public void indexShouldExpireAfterTtl() {
+        RemoteKeyIndex index = new RemoteKeyIndex(Duration.ofMinutes(10));
+        Instant seededAt = Instant.parse("2020-01-01T00:00:00Z");
+        Assertions.assertTrue(index.isExpired(seededAt));
+
+        index.seed(Collections.emptyList(), seededAt);
+        Assertions.assertFalse(index.isExpired(seededAt.plus(Duration.ofMinutes(9))));
+        Assertions.assertTrue(index.isExpired(seededAt.plus(Duration.ofMinutes(10))));
+    }
+
+    @Test
+    public void lastListedKeyShouldOnlyFollowListings() {
+        RemoteKeyIndex index = new RemoteKeyIndex(Duration.ofMinutes(10));
+        index.seed(Arrays.asList("b", "a"), Instant.now());
+        index.add("z");
+        index.addListed(Collections.singletonList("c"));
+
+        Assertions.assertEquals("c", index.getLastListedKey());
+        Assertions.assertTrue(index.contains("z"));
+        Assertions.assertTrue(index.contains("a"));
+        Assertions.assertFalse(index.contains("d"));
+    }
+
+    @Test
+    public void seedShouldReplaceTheKeys() {
+        RemoteKeyIndex index = new RemoteKeyIndex(Duration.ofMinutes(10));
+        index.seed(Collections.singletonList("a"), Instant.now());
+        index.seed(Collections.singletonList("b"), Instant.now());
+
+        Assertions.assertFalse(index.contains("a"));
+        Assertions.assertEquals("b", index.getLastListedKey());
+    }
+}
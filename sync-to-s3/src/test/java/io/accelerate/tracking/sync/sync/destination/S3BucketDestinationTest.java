@@ -2,15 +2,21 @@ package io.accelerate.tracking.sync.sync.destination;
 
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.model.*;
+import io.accelerate.tracking.sync.upload.UploadedParts;
 import org.hamcrest.MatcherAssert;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import static org.hamcrest.Matchers.instanceOf;
@@ -112,13 +118,13 @@ public class S3BucketDestinationTest {
     @Test
     public void filterUploadableFilesShouldAcceptAllIfS3DirectoryIsEmpty() throws DestinationOperationException {
 
-        ObjectListing listing = mock(ObjectListing.class);
+        ListObjectsV2Result listing = mock(ListObjectsV2Result.class);
         List<S3ObjectSummary> summaries = new ArrayList<>();
         doReturn(summaries).when(listing).getObjectSummaries();
         doReturn(false).when(listing).isTruncated();
-        doReturn(null).when(listing).getNextMarker();
+        doReturn(null).when(listing).getNextContinuationToken();
 
-        doReturn(listing).when(awsClient).listObjects((ListObjectsRequest) any());
+        doReturn(listing).when(awsClient).listObjectsV2((ListObjectsV2Request) any());
 
         List<String> paths = Arrays.asList(
                 "file1.txt",
@@ -145,7 +151,7 @@ public class S3BucketDestinationTest {
     @Test
     public void filterUploadableFilesShouldRemoveFilesExistingInS3Directory() throws DestinationOperationException {
 
-        ObjectListing listing = mock(ObjectListing.class);
+        ListObjectsV2Result listing = mock(ListObjectsV2Result.class);
 
         List<String> existingPaths = Arrays.asList(
                 PREFIX + "file1.txt",
@@ -162,9 +168,9 @@ public class S3BucketDestinationTest {
 
         doReturn(summaries).when(listing).getObjectSummaries();
         doReturn(false).when(listing).isTruncated();
-        doReturn(null).when(listing).getNextMarker();
+        doReturn(null).when(listing).getNextContinuationToken();
 
-        doReturn(listing).when(awsClient).listObjects((ListObjectsRequest) any());
+        doReturn(listing).when(awsClient).listObjectsV2((ListObjectsV2Request) any());
 
         List<String> paths = Arrays.asList(
                 "file1.txt",
@@ -188,7 +194,7 @@ public class S3BucketDestinationTest {
     @Test
     public void filterUploadableFilesShouldHandleMultipleMarkers() throws DestinationOperationException {
 
-        ObjectListing listing = mock(ObjectListing.class);
+        ListObjectsV2Result listing = mock(ListObjectsV2Result.class);
 
         List<String> existingPaths = Arrays.asList(
                 PREFIX + "file1.txt",
@@ -217,13 +223,13 @@ public class S3BucketDestinationTest {
                 .thenReturn(true)
                 .thenReturn(false);
 
-        when(listing.getNextMarker())
+        when(listing.getNextContinuationToken())
                 .thenReturn("1")
                 .thenReturn(null);
 
         doReturn(listing)
                 .when(awsClient)
-                .listObjects((ListObjectsRequest) any());
+                .listObjectsV2((ListObjectsV2Request) any());
 
         List<String> paths = Arrays.asList(
                 "file1.txt",
@@ -250,4 +256,163 @@ public class S3BucketDestinationTest {
         Collections.sort(expected);
         Assertions.assertEquals(result, expected);
     }
+
+    @Test
+    public void getAlreadyUploadedPartsShouldListMultipartUploadsOncePerPass() throws DestinationOperationException {
+        MultipartUpload upload = new MultipartUpload();
+        upload.setKey(PREFIX + "file1.txt");
+        upload.setUploadId("upload1");
+        MultipartUploadListing listing = new MultipartUploadListing();
+        listing.setMultipartUploads(Collections.singletonList(upload));
+        when(awsClient.listMultipartUploads(any())).thenReturn(listing);
+        PartListing partListing = new PartListing();
+        when(awsClient.listParts(any())).thenReturn(partListing);
+
+        Assertions.assertEquals("upload1", destination.getAlreadyUploadedParts("file1.txt").getUploadId());
+        Assertions.assertNull(destination.getAlreadyUploadedParts("file2.txt"));
+        Assertions.assertNull(destination.getAlreadyUploadedParts("file3.txt"));
+        verify(awsClient, times(1)).listMultipartUploads(any());
+
+        when(awsClient.listObjectsV2((ListObjectsV2Request) any())).thenReturn(new ListObjectsV2Result());
+        destination.filterUploadableFiles(Collections.singletonList("file1.txt"));
+        destination.getAlreadyUploadedParts("file1.txt");
+        verify(awsClient, times(2)).listMultipartUploads(any());
+    }
+
+    @Test
+    public void filterMoreUploadableFilesShouldKeepTheMultipartUploadsOfThePass() throws DestinationOperationException {
+        when(awsClient.listMultipartUploads(any())).thenReturn(new MultipartUploadListing());
+        when(awsClient.listObjectsV2((ListObjectsV2Request) any())).thenReturn(new ListObjectsV2Result());
+
+        destination.filterUploadableFiles(Collections.singletonList("file1.txt"));
+        destination.getAlreadyUploadedParts("file1.txt");
+        destination.filterMoreUploadableFiles(Collections.singletonList("file2.txt"));
+        destination.getAlreadyUploadedParts("file2.txt");
+
+        verify(awsClient, times(1)).listMultipartUploads(any());
+        verify(awsClient, times(2)).listObjectsV2((ListObjectsV2Request) any());
+    }
+
+    @Test
+    public void multipartUploadIndexShouldFollowInitiatedAndCompletedUploads() throws DestinationOperationException {
+        when(awsClient.listMultipartUploads(any())).thenReturn(new MultipartUploadListing());
+        InitiateMultipartUploadResult initiateResult = new InitiateMultipartUploadResult();
+        initiateResult.setUploadId("upload1");
+        when(awsClient.initiateMultipartUpload(any())).thenReturn(initiateResult);
+        PartListing partListing = new PartListing();
+        when(awsClient.listParts(any())).thenReturn(partListing);
+
+        Assertions.assertNull(destination.getAlreadyUploadedParts("file1.txt"));
+        destination.initUploading("file1.txt");
+        Assertions.assertEquals("upload1", destination.getAlreadyUploadedParts("file1.txt").getUploadId());
+
+        destination.commitMultipartUpload("file1.txt", new ArrayList<>(), "upload1");
+        Assertions.assertNull(destination.getAlreadyUploadedParts("file1.txt"));
+        verify(awsClient, times(1)).listMultipartUploads(any());
+    }
+
+    @Test
+    public void getAlreadyUploadedPartsShouldFollowAllThePagesOfParts() throws DestinationOperationException {
+        MultipartUpload upload = new MultipartUpload();
+        upload.setKey(PREFIX + "file1.txt");
+        upload.setUploadId("upload1");
+        MultipartUploadListing listing = new MultipartUploadListing();
+        listing.setMultipartUploads(Collections.singletonList(upload));
+        when(awsClient.listMultipartUploads(any())).thenReturn(listing);
+        PartListing firstPage = createPartListing(1, 1000);
+        firstPage.setTruncated(true);
+        firstPage.setNextPartNumberMarker(1000);
+        PartListing secondPage = createPartListing(1001, 1500);
+        when(awsClient.listParts(any())).thenReturn(firstPage).thenReturn(secondPage);
+
+        UploadedParts uploadedParts = destination.getAlreadyUploadedParts("file1.txt");
+
+        Assertions.assertEquals(1500, uploadedParts.getLastPartNumber());
+        Assertions.assertEquals(1500L * 5 * 1024 * 1024, uploadedParts.getUploadedSize());
+        ArgumentCaptor<ListPartsRequest> requests = ArgumentCaptor.forClass(ListPartsRequest.class);
+        verify(awsClient, times(2)).listParts(requests.capture());
+        Assertions.assertEquals(Integer.valueOf(1000), requests.getAllValues().get(1).getPartNumberMarker());
+    }
+
+    private static PartListing createPartListing(int firstPartNumber, int lastPartNumber) {
+        List<PartSummary> parts = new ArrayList<>();
+        for (int partNumber = firstPartNumber; partNumber <= lastPartNumber; partNumber++) {
+            PartSummary part = new PartSummary();
+            part.setPartNumber(partNumber);
+            part.setSize(5 * 1024 * 1024);
+            parts.add(part);
+        }
+        PartListing partListing = new PartListing();
+        partListing.setParts(parts);
+        return partListing;
+    }
+
+    @Test
+    public void filterUploadableFilesShouldOnlyListKeysAfterTheLastListedOne() throws DestinationOperationException {
+        S3ObjectSummary existing = new S3ObjectSummary();
+        existing.setKey(PREFIX + "file1.txt");
+        ListObjectsV2Result fullListing = new ListObjectsV2Result();
+        fullListing.getObjectSummaries().add(existing);
+        S3ObjectSummary added = new S3ObjectSummary();
+        added.setKey(PREFIX + "file2.txt");
+        ListObjectsV2Result deltaListing = new ListObjectsV2Result();
+        deltaListing.getObjectSummaries().add(added);
+        when(awsClient.listObjectsV2((ListObjectsV2Request) any()))
+                .thenReturn(fullListing)
+                .thenReturn(deltaListing)
+                .thenReturn(new ListObjectsV2Result());
+
+        List<String> paths = Arrays.asList("file1.txt", "file2.txt", "file3.txt");
+        Assertions.assertEquals(Arrays.asList("file2.txt", "file3.txt"), destination.filterUploadableFiles(paths));
+        Assertions.assertEquals(Collections.singletonList("file3.txt"), destination.filterUploadableFiles(paths));
+        destination.commitMultipartUpload("file3.txt", new ArrayList<>(), "upload3");
+        Assertions.assertEquals(Collections.emptyList(), destination.filterUploadableFiles(paths));
+
+        ArgumentCaptor<ListObjectsV2Request> requests = ArgumentCaptor.forClass(ListObjectsV2Request.class);
+        verify(awsClient, times(3)).listObjectsV2(requests.capture());
+        Assertions.assertNull(requests.getAllValues().get(0).getStartAfter());
+        Assertions.assertEquals(PREFIX + "file1.txt", requests.getAllValues().get(1).getStartAfter());
+        Assertions.assertEquals(PREFIX + "file2.txt", requests.getAllValues().get(2).getStartAfter());
+    }
+
+    @Test
+    public void filterUploadableFilesShouldListEverythingOnceTheIndexExpired() throws DestinationOperationException {
+        ((S3BucketDestination) destination).setRemoteIndexTtl(Duration.ZERO);
+        when(awsClient.listObjectsV2((ListObjectsV2Request) any())).thenReturn(new ListObjectsV2Result());
+
+        destination.filterUploadableFiles(Collections.singletonList("file1.txt"));
+        destination.filterUploadableFiles(Collections.singletonList("file1.txt"));
+
+        ArgumentCaptor<ListObjectsV2Request> requests = ArgumentCaptor.forClass(ListObjectsV2Request.class);
+        verify(awsClient, times(2)).listObjectsV2(requests.capture());
+        requests.getAllValues().forEach(request -> Assertions.assertNull(request.getStartAfter()));
+    }
+
+    @Test
+    public void concurrentBatchesShouldSeedTheIndexOnce() throws Exception {
+        when(awsClient.listObjectsV2((ListObjectsV2Request) any())).thenAnswer(invocation -> {
+            Thread.sleep(100);
+            S3ObjectSummary existing = new S3ObjectSummary();
+            existing.setKey(PREFIX + "file0.txt");
+            ListObjectsV2Result listing = new ListObjectsV2Result();
+            listing.getObjectSummaries().add(existing);
+            return listing;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            List<Future<List<String>>> batches = executor.invokeAll(Arrays.asList(
+                    () -> destination.filterMoreUploadableFiles(Collections.singletonList("file1.txt")),
+                    () -> destination.filterMoreUploadableFiles(Collections.singletonList("file2.txt"))));
+            for (Future<List<String>> batch : batches) {
+                Assertions.assertEquals(1, batch.get().size());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        ArgumentCaptor<ListObjectsV2Request> requests = ArgumentCaptor.forClass(ListObjectsV2Request.class);
+        verify(awsClient, times(2)).listObjectsV2(requests.capture());
+        Assertions.assertEquals(1, requests.getAllValues().stream().filter(request -> request.getStartAfter() == null).count());
+    }
 }
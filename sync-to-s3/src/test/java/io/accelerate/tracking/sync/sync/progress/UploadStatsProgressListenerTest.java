@@ -54,4 +54,25 @@ public class UploadStatsProgressListenerTest {
         listener.uploadFileFinished(file);
         assertFalse(listener.isCurrentlyUploading());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void concurrentUploadsShouldKeepSeparateStats() {
+        File other = mock(File.class);
+        when(other.length()).thenReturn(Long.valueOf(2000000));
+        listener.uploadFileStarted(file, "upload", 0);
+        listener.uploadFileStarted(other, "other", 0);
+
+        listener.uploadFileProgress("upload", 100);
+        listener.uploadFileProgress("other", 200);
+        assertEquals(2, listener.getAllCurrentStats().size());
+
+        listener.uploadFileFinished(file);
+        assertTrue(listener.isCurrentlyUploading());
+        UploadStatsProgressListener.FileUploadStat stat = listener.getCurrentStats().get();
+        assertEquals(2000000, stat.getTotalSize());
+        assertEquals(200, stat.getUploadedSize());
+
+        listener.uploadFileFinished(other);
+        assertFalse(listener.isCurrentlyUploading());
+    }
+}
@@ -0,0 +1,41 @@
+package io.accelerate.tracking.sync.upload;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class BytesInFlightLimiterTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @Test
+    public void acquireShouldTakeTheBytesUntilReleased() throws InterruptedException {
+        BytesInFlightLimiter limiter = new BytesInFlightLimiter(10L * MB);
+
+        int permits = limiter.acquire(4 * MB);
+        Assertions.assertEquals(6L * MB, limiter.availableBytes());
+
+        limiter.release(permits);
+        Assertions.assertEquals(10L * MB, limiter.availableBytes());
+    }
+
+    @Test
+    public void partLargerThanTheBudgetShouldTakeAllOfIt() throws InterruptedException {
+        BytesInFlightLimiter limiter = new BytesInFlightLimiter(10L * MB);
+
+        limiter.acquire(50L * MB);
+
+        Assertions.assertEquals(0, limiter.availableBytes());
+    }
+
+    @Test
+    public void budgetShouldExceedTwoGigabytes() {
+        BytesInFlightLimiter limiter = new BytesInFlightLimiter(8L * 1024 * MB);
+
+        Assertions.assertEquals(8L * 1024 * MB, limiter.availableBytes());
+    }
+
+    @Test
+    public void constructorShouldRejectATooSmallBudget() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new BytesInFlightLimiter(10));
+    }
+}
@@ -1,5 +1,7 @@
 package io.accelerate.tracking.sync.upload;
 
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.UploadPartRequest;
 import org.hamcrest.MatcherAssert;
 import org.junit.jupiter.api.Assertions;
@@ -7,14 +9,24 @@ import org.junit.jupiter.api.Test;
 import io.accelerate.tracking.sync.sync.destination.Destination;
 import io.accelerate.tracking.sync.sync.destination.DestinationOperationException;
 
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.mockito.Mockito.*;
 
 public class ConcurrentMultipartUploaderTest {
@@ -82,4 +94,172 @@ public class ConcurrentMultipartUploaderTest {
         });
         MatcherAssert.assertThat(destinationOperationException.getMessage(), containsString("Cannot finish uploading"));
     }
+
+    @Test
+    public void closeShouldWaitForSubmittedPartsAndStopThreads() throws Exception {
+        Destination destination = mock(Destination.class);
+        MultipartUploadResult result = mock(MultipartUploadResult.class);
+        when(destination.uploadMultiPart(any())).thenReturn(result);
+        ConcurrentMultipartUploader uploader = new ConcurrentMultipartUploader(destination, 2);
+
+        Future<MultipartUploadResult> future = uploader.submitTaskForPartUploading(mock(UploadPartRequest.class));
+        uploader.close();
+
+        Assertions.assertTrue(uploader.isClosed());
+        Assertions.assertTrue(future.isDone());
+        Assertions.assertSame(result, future.get());
+    }
+
+    @Test
+    public void retryableFailureShouldSendOnlyThePartAgain() throws Exception {
+        Destination destination = mock(Destination.class);
+        MultipartUploadResult result = mock(MultipartUploadResult.class);
+        when(destination.uploadMultiPart(any()))
+                .thenThrow(new DestinationOperationException("", createS3Exception(503, "SlowDown")))
+                .thenThrow(new SdkClientException("Connection reset"))
+                .thenReturn(result);
+        ConcurrentMultipartUploader uploader = new ConcurrentMultipartUploader(destination, 1);
+        uploader.setPartRetryPolicy(new PartRetryPolicy(3, Duration.ofMillis(1), Duration.ofMillis(1)));
+
+        Assertions.assertSame(result, uploader.submitTaskForPartUploading(mock(UploadPartRequest.class)).get());
+        verify(destination, times(3)).uploadMultiPart(any());
+        uploader.close();
+    }
+
+    @Test
+    public void partShouldFailOnceItsAttemptsAreUsedUp() throws Exception {
+        Destination destination = mock(Destination.class);
+        when(destination.uploadMultiPart(any())).thenThrow(new DestinationOperationException("", createS3Exception(500, "InternalError")));
+        ConcurrentMultipartUploader uploader = new ConcurrentMultipartUploader(destination, 1);
+        uploader.setPartRetryPolicy(new PartRetryPolicy(2, Duration.ofMillis(1), Duration.ofMillis(1)));
+
+        Future<MultipartUploadResult> future = uploader.submitTaskForPartUploading(mock(UploadPartRequest.class));
+        ExecutionException exception = Assertions.assertThrows(ExecutionException.class, future::get);
+        MatcherAssert.assertThat(exception.getCause(), instanceOf(DestinationOperationException.class));
+        verify(destination, times(2)).uploadMultiPart(any());
+        uploader.close();
+    }
+
+    @Test
+    public void fatalFailureShouldNotBeRetried() throws Exception {
+        Destination destination = mock(Destination.class);
+        when(destination.uploadMultiPart(any())).thenThrow(new DestinationOperationException("", createS3Exception(404, "NoSuchUpload")));
+        ConcurrentMultipartUploader uploader = new ConcurrentMultipartUploader(destination, 1);
+
+        Future<MultipartUploadResult> future = uploader.submitTaskForPartUploading(mock(UploadPartRequest.class));
+        Assertions.assertThrows(ExecutionException.class, future::get);
+        verify(destination, times(1)).uploadMultiPart(any());
+        uploader.close();
+    }
+
+    @Test
+    public void poolShouldSendAPartPerThread() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        Destination destination = mock(Destination.class);
+        when(destination.uploadMultiPart(any())).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            inFlight.decrementAndGet();
+            return mock(MultipartUploadResult.class);
+        });
+        ConcurrentMultipartUploader uploader = new ConcurrentMultipartUploader(destination, 2);
+
+        List<Future<MultipartUploadResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(uploader.submitTaskForPartUploading(new UploadPartRequest().withPartSize(5 * 1024 * 1024)));
+        }
+        for (Future<MultipartUploadResult> future : futures) {
+            future.get();
+        }
+        uploader.close();
+
+        Assertions.assertEquals(2, maxInFlight.get());
+    }
+
+    @Test
+    public void virtualThreadsShouldKeepThePartsWithinTheBytesInFlight() throws Exception {
+        int partSize = 5 * 1024 * 1024;
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        Destination destination = mock(Destination.class);
+        when(destination.uploadMultiPart(any())).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            inFlight.decrementAndGet();
+            return mock(MultipartUploadResult.class);
+        });
+        ConcurrentMultipartUploader uploader = ConcurrentMultipartUploader.withVirtualThreads(destination, 3L * partSize);
+
+        List<Future<MultipartUploadResult>> futures = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            futures.add(uploader.submitTaskForPartUploading(new UploadPartRequest().withPartSize(partSize)));
+        }
+        for (Future<MultipartUploadResult> future : futures) {
+            future.get();
+        }
+        uploader.close();
+
+        Assertions.assertEquals(3, maxInFlight.get());
+        Assertions.assertTrue(uploader.isClosed());
+    }
+
+    @Test
+    public void rateLimitedPartShouldBeReadFromItsRegionOfTheFile() throws Exception {
+        File file = File.createTempFile("rate-limited", ".bin");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "0123456789".getBytes(StandardCharsets.US_ASCII));
+        List<String> bodies = new ArrayList<>();
+        Destination destination = mock(Destination.class);
+        when(destination.uploadMultiPart(any())).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            Assertions.assertNull(request.getFile());
+            bodies.add(new String(request.getInputStream().readAllBytes(), StandardCharsets.US_ASCII));
+            return mock(MultipartUploadResult.class);
+        });
+        ConcurrentMultipartUploader uploader = new ConcurrentMultipartUploader(destination, 1);
+        uploader.setUploadRateLimiter(new UploadRateLimiter(1024 * 1024));
+
+        UploadPartRequest request = new UploadPartRequest().withFile(file).withFileOffset(3).withPartSize(4);
+        uploader.submitTaskForPartUploading(request).get();
+        uploader.close();
+
+        Assertions.assertEquals(List.of("3456"), bodies);
+        Assertions.assertSame(file, request.getFile());
+    }
+
+    @Test
+    public void limitSetWhileAPartIsSentShouldApplyToTheRestOfIt() throws Exception {
+        File file = File.createTempFile("unlimited", ".bin");
+        file.deleteOnExit();
+        Files.write(file.toPath(), new byte[64 * 1024]);
+        UploadRateLimiter rateLimiter = new UploadRateLimiter();
+        List<Long> restReadMillis = new ArrayList<>();
+        Destination destination = mock(Destination.class);
+        when(destination.uploadMultiPart(any())).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            InputStream body = request.getInputStream();
+            Assertions.assertEquals(16 * 1024, body.read(new byte[16 * 1024]));
+            rateLimiter.setBytesPerSecond(64 * 1024);
+            long start = System.nanoTime();
+            Assertions.assertEquals(48 * 1024, body.readAllBytes().length);
+            restReadMillis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return mock(MultipartUploadResult.class);
+        });
+        ConcurrentMultipartUploader uploader = new ConcurrentMultipartUploader(destination, 1);
+        uploader.setUploadRateLimiter(rateLimiter);
+
+        uploader.submitTaskForPartUploading(new UploadPartRequest().withFile(file).withPartSize(64 * 1024)).get();
+        uploader.close();
+
+        // 48 KB at 64 KB/s, less the burst of the bucket
+        Assertions.assertTrue(restReadMillis.get(0) >= 500);
+    }
+
+    private static AmazonS3Exception createS3Exception(int statusCode, String errorCode) {
+        AmazonS3Exception exception = new AmazonS3Exception(errorCode);
+        exception.setStatusCode(statusCode);
+        exception.setErrorCode(errorCode);
+        return exception;
+    }
 }
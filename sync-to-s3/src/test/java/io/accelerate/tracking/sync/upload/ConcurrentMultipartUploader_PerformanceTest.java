@@ -0,0 +1,91 @@
+package io.accelerate.tracking.sync.upload;
+
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import io.accelerate.tracking.sync.sync.destination.Destination;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import static org.mockito.Mockito.*;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Measures the throughput of the pool of platform threads and of the virtual threads on parts
+ * that spend their time waiting on the network, as uploads on a high latency link do
+ */
+@Tag("performance")
+public class ConcurrentMultipartUploader_PerformanceTest {
+    private static final Logger log = getLogger(ConcurrentMultipartUploader_PerformanceTest.class);
+
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    private static final int PARTS_COUNT = 200;
+
+    private static final int PARTS_IN_FLIGHT = 16;
+
+    private static final long NETWORK_LATENCY_MILLIS = 20;
+
+    private static final int MEASURED_ROUNDS = 3;
+
+    @Test
+    public void virtualThreadsShouldUploadFasterThanTheDefaultPoolOnAHighLatencyLink() throws Exception {
+        Destination destination = createHighLatencyDestination();
+
+        double poolThroughput = measureThroughput(() -> new ConcurrentMultipartUploader(destination));
+        double virtualThroughput = measureThroughput(
+                () -> ConcurrentMultipartUploader.withVirtualThreads(destination, PARTS_IN_FLIGHT * (long) PART_SIZE));
+
+        log.info(String.format("%d parts of %d MB with %d ms of latency: default pool %.1f parts/s (%.1f MB/s), virtual threads %.1f parts/s (%.1f MB/s)",
+                PARTS_COUNT, PART_SIZE / (1024 * 1024), NETWORK_LATENCY_MILLIS,
+                poolThroughput, toMegabytesPerSecond(poolThroughput), virtualThroughput, toMegabytesPerSecond(virtualThroughput)));
+        Assertions.assertTrue(virtualThroughput > poolThroughput);
+    }
+
+    /**
+     * Parts per second of the best measured round, the first round only warms up
+     */
+    private static double measureThroughput(Supplier<ConcurrentMultipartUploader> uploaders) throws Exception {
+        double bestThroughput = 0;
+        for (int round = 0; round <= MEASURED_ROUNDS; round++) {
+            try (ConcurrentMultipartUploader uploader = uploaders.get()) {
+                long start = System.nanoTime();
+                uploadAllParts(uploader);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                if (round > 0) {
+                    bestThroughput = Math.max(bestThroughput, PARTS_COUNT / seconds);
+                }
+            }
+        }
+        return bestThroughput;
+    }
+
+    private static void uploadAllParts(ConcurrentMultipartUploader uploader) throws Exception {
+        List<Future<MultipartUploadResult>> futures = new ArrayList<>();
+        for (int i = 0; i < PARTS_COUNT; i++) {
+            futures.add(uploader.submitTaskForPartUploading(new UploadPartRequest().withPartSize(PART_SIZE)));
+        }
+        for (Future<MultipartUploadResult> future : futures) {
+            Assertions.assertNotNull(future.get());
+        }
+    }
+
+    private static double toMegabytesPerSecond(double partsPerSecond) {
+        return partsPerSecond * PART_SIZE / (1024 * 1024);
+    }
+
+    private static Destination createHighLatencyDestination() throws Exception {
+        Destination destination = mock(Destination.class);
+        MultipartUploadResult result = mock(MultipartUploadResult.class);
+        when(destination.uploadMultiPart(any())).thenAnswer(invocation -> {
+            Thread.sleep(NETWORK_LATENCY_MILLIS);
+            return result;
+        });
+        return destination;
+    }
+}
@@ -15,7 +15,21 @@ import static org.mockito.Mockito.*;
 public class FileUploaderImplTest {
 
     @Test
-    public void uploadShouldHandleFirstException() throws UploadingException, DestinationOperationException, IOException, URISyntaxException {
+    public void uploadShouldSucceedWhenStrategySucceeds() throws UploadingException, DestinationOperationException, IOException, URISyntaxException {
+        Destination destination = mock(Destination.class);
+        UploadingStrategy strategy = mock(UploadingStrategy.class);
+
+        FileUploader uploader = new FileUploaderImpl(destination, strategy);
+        File file = mock(File.class);
+        when(file.toURI()).thenReturn(new URI("file:///tmp/file1.txt"));
+        when(file.getName()).thenReturn("path");
+        uploader.upload(file);
+
+        verify(strategy, times(1)).upload(file, "path");
+    }
+
+    @Test
+    public void uploadShouldNotRestartTheWholeFileOnFailure() throws DestinationOperationException, IOException, URISyntaxException {
         Destination destination = mock(Destination.class);
         UploadingStrategy strategy = mock(UploadingStrategy.class);
 
@@ -28,7 +42,9 @@ public class FileUploaderImplTest {
         File file = mock(File.class);
         when(file.toURI()).thenReturn(new URI("file:///tmp/file1.txt"));
         when(file.getName()).thenReturn("path");
-        uploader.upload(file);
+        Assertions.assertThrows(UploadingException.class, () -> uploader.upload(file));
+
+        verify(strategy, times(1)).upload(any(), anyString());
     }
 
     @Test
@@ -1,5 +1,6 @@
 package io.accelerate.tracking.sync.upload;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import io.accelerate.tracking.sync.sync.destination.Destination;
 import io.accelerate.tracking.sync.sync.destination.DestinationOperationException;
@@ -29,7 +30,27 @@ public class FileUploadingServiceTest {
         when(path.getParent()).thenReturn(path);
         //doNothing().when(path).resolve(anyString());
         when(file.toPath()).thenReturn(path);
-        FileUploadingService service = new FileUploadingService(destination);
-        service.upload(file);
+        try (FileUploadingService service = new FileUploadingService(destination)) {
+            service.upload(file);
+        }
+    }
+
+    @Test
+    public void closeShouldCloseTheUploaderCreatedByTheService() {
+        FileUploadingService service = new FileUploadingService(mock(Destination.class));
+
+        service.close();
+
+        Assertions.assertTrue(service.getConcurrentUploader().isClosed());
+    }
+
+    @Test
+    public void closeShouldLeaveASharedUploaderOpen() {
+        Destination destination = mock(Destination.class);
+        try (ConcurrentMultipartUploader uploader = new ConcurrentMultipartUploader(destination)) {
+            new FileUploadingService(destination, uploader).close();
+
+            Assertions.assertFalse(uploader.isClosed());
+        }
     }
 }
@@ -1,24 +1,31 @@
 package io.accelerate.tracking.sync.upload;
 
+import com.amazonaws.services.s3.model.PartSummary;
 import com.amazonaws.services.s3.model.UploadPartRequest;
+import org.hamcrest.MatcherAssert;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import io.accelerate.tracking.sync.sync.destination.Destination;
 import io.accelerate.tracking.sync.sync.destination.DestinationOperationException;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
 
@@ -51,39 +58,144 @@ public class MultipartUploadFileTest {
     }
 
     @Test
-    public void streamUploadPartRequestForFailedPartsShouldHandleIOException() throws DestinationOperationException, IOException {
+    public void streamUploadPartRequestForFailedPartsShouldPropagateIOException() throws DestinationOperationException, IOException {
         MultipartUploadFile multipartUploadFile = mock(MultipartUploadFile.class);
-        Set<Integer> partNumbers = new HashSet<>(Arrays.asList(1, 2, 3, 4, 5));
+        int[] partNumbers = {1, 2, 3, 4, 5};
 
         doReturn(partNumbers)
                 .when(multipartUploadFile)
                 .getFailedMiddlePartNumbers();
-        doReturn(mock(UploadPartRequest.class))
-                .when(multipartUploadFile)
-                .getUploadPartRequestForData(any(), anyBoolean(), anyInt());
         doCallRealMethod().when(multipartUploadFile)
                 .streamUploadPartRequestForFailedParts();
 
         Arrays.asList(1, 3, 5).stream().forEach(partNumber -> {
             try {
-                when(multipartUploadFile.readPart(eq(partNumber)))
-                        .thenReturn("Random".getBytes());
-            } catch (IOException ex) {
+                when(multipartUploadFile.getUploadPartRequestForFailedPart(eq(partNumber)))
+                        .thenReturn(mock(UploadPartRequest.class));
+            } catch (IOException | DestinationOperationException ex) {
                 Logger.getLogger(MultipartUploadFileTest.class.getName()).log(Level.SEVERE, null, ex);
             }
         });
         Arrays.asList(2, 4).stream().forEach(partNumber -> {
             try {
-                when(multipartUploadFile.readPart(eq(partNumber)))
+                when(multipartUploadFile.getUploadPartRequestForFailedPart(eq(partNumber)))
                         .thenThrow(new IOException());
-            } catch (IOException ex) {
+            } catch (IOException | DestinationOperationException ex) {
                 Logger.getLogger(MultipartUploadFileTest.class.getName()).log(Level.SEVERE, null, ex);
             }
         });
 
-        List<UploadPartRequest> requests = multipartUploadFile.streamUploadPartRequestForFailedParts()
-                .collect(Collectors.toList());
+        Iterator<UploadPartRequest> requests = multipartUploadFile.streamUploadPartRequestForFailedParts().iterator();
+
+        assertNotNull(requests.next());
+        UncheckedIOException ex = assertThrows(UncheckedIOException.class, requests::next);
+        MatcherAssert.assertThat(ex.getMessage(), containsString("part 2"));
+    }
+
+    @Test
+    public void partRequestCarriesContentMd5OnlyInContentMd5Mode(@TempDir Path tempDir) throws Exception {
+        File file = tempDir.resolve("file.bin").toFile();
+        Files.write(file.toPath(), "Hello World!".getBytes());
+        when(mockDestination.initUploading(mockRemotePath)).thenReturn("uploadId");
+        when(mockDestination.createUploadPartRequest(mockRemotePath)).thenAnswer(invocation -> new UploadPartRequest());
+        FilePart part = new FilePart(1, 0, 12, true);
+
+        try (MultipartUploadFile multipartUploadFile = new MultipartUploadFile(file, mockRemotePath, mockDestination)) {
+            assertEquals("7Qdih1MuhjZehB6Sv8UNjA==", multipartUploadFile.getUploadPartRequestForPart(part).getMd5Digest());
+
+            multipartUploadFile.setPartIntegrity(PartIntegrity.STREAMING);
+            UploadPartRequest request = multipartUploadFile.getUploadPartRequestForPart(part);
+            assertNull(request.getMd5Digest());
+            assertNotNull(request.getFile());
+        }
+    }
+
+    @Test
+    public void initShouldResumeFromLocalStateWithoutAskingDestination(@TempDir Path tempDir) throws Exception {
+        File file = tempDir.resolve("file.bin").toFile();
+        Files.write(file.toPath(), new byte[20]);
+        UploadStateRegistry registry = new UploadStateRegistry();
+        registry.uploadStarted(mockRemotePath, "uploadId");
+        registry.partUploaded(mockRemotePath, 1, "etag1", 10);
+        registry.fileUploaded(mockRemotePath, 20, file.lastModified());
+
+        try (MultipartUploadFile multipartUploadFile = new MultipartUploadFile(file, mockRemotePath, mockDestination, registry)) {
+            assertEquals("uploadId", multipartUploadFile.getUploadId());
+            assertEquals(1, multipartUploadFile.getPartETags().size());
+        }
+        verify(mockDestination, never()).getAlreadyUploadedParts(anyString());
+        verify(mockDestination, never()).initUploading(anyString());
+    }
+
+    @Test
+    public void resumedUploadShouldKeepThePartSizesItWasStartedWith(@TempDir Path tempDir) throws Exception {
+        int partSize = MultipartUploadFile.MINIMUM_PART_SIZE;
+        File file = tempDir.resolve("file.bin").toFile();
+        Files.write(file.toPath(), new byte[4 * partSize]);
+        List<PartSummary> parts = Arrays.asList(createPartSummary(1, partSize), createPartSummary(2, partSize));
+        UploadedParts uploadedParts = UploadedParts.fromParts("uploadId", parts.iterator());
+        when(mockDestination.getAlreadyUploadedParts(mockRemotePath)).thenReturn(uploadedParts);
+        when(mockDestination.createUploadPartRequest(mockRemotePath)).thenAnswer(invocation -> new UploadPartRequest());
+
+        try (MultipartUploadFile multipartUploadFile = new MultipartUploadFile(file, mockRemotePath, mockDestination)) {
+            multipartUploadFile.setPartSizePolicy(PartSizePolicy.fixed(2 * partSize));
+            List<UploadPartRequest> requests = multipartUploadFile.streamUploadPartRequestForIncompleteParts()
+                    .collect(Collectors.toList());
+
+            assertEquals(1, requests.size());
+            assertEquals(3, requests.get(0).getPartNumber());
+            assertEquals(2L * partSize, requests.get(0).getFileOffset());
+            assertEquals(2L * partSize, requests.get(0).getPartSize());
+        }
+        verify(mockDestination, never()).abortMultipartUpload(anyString(), anyString());
+    }
+
+    @Test
+    public void nextIncompletePartShouldStartAfterTheLastUploadedPart(@TempDir Path tempDir) throws Exception {
+        int partSize = MultipartUploadFile.MINIMUM_PART_SIZE;
+        File file = tempDir.resolve("file.bin").toFile();
+        Files.write(file.toPath(), new byte[4 * partSize]);
+        List<PartSummary> parts = Arrays.asList(createPartSummary(1, partSize), createPartSummary(3, partSize));
+        UploadedParts uploadedParts = UploadedParts.fromParts("uploadId", parts.iterator());
+        when(mockDestination.getAlreadyUploadedParts(mockRemotePath)).thenReturn(uploadedParts);
+        when(mockDestination.createUploadPartRequest(mockRemotePath)).thenAnswer(invocation -> new UploadPartRequest());
+
+        try (MultipartUploadFile multipartUploadFile = new MultipartUploadFile(file, mockRemotePath, mockDestination)) {
+            List<UploadPartRequest> requests = multipartUploadFile.streamUploadPartRequestForIncompleteParts()
+                    .collect(Collectors.toList());
+
+            assertEquals(1, requests.size());
+            assertEquals(4, requests.get(0).getPartNumber());
+            assertEquals(3L * partSize, requests.get(0).getFileOffset());
+        }
+    }
+
+    @Test
+    public void resumedUploadShouldStartAgainWhenMissingPartsWerePlannedWithAnotherSize(@TempDir Path tempDir) throws Exception {
+        int partSize = MultipartUploadFile.MINIMUM_PART_SIZE;
+        File file = tempDir.resolve("file.bin").toFile();
+        Files.write(file.toPath(), new byte[3 * partSize]);
+        List<PartSummary> parts = Arrays.asList(createPartSummary(1, partSize), createPartSummary(3, partSize));
+        UploadedParts uploadedParts = UploadedParts.fromParts("uploadId", parts.iterator());
+        when(mockDestination.getAlreadyUploadedParts(mockRemotePath)).thenReturn(uploadedParts);
+        when(mockDestination.initUploading(mockRemotePath)).thenReturn("newUploadId");
+        when(mockDestination.createUploadPartRequest(mockRemotePath)).thenAnswer(invocation -> new UploadPartRequest());
+
+        try (MultipartUploadFile multipartUploadFile = new MultipartUploadFile(file, mockRemotePath, mockDestination)) {
+            multipartUploadFile.setPartSizePolicy(PartSizePolicy.fixed(2 * partSize));
+
+            assertEquals(0, multipartUploadFile.streamUploadPartRequestForFailedParts().count());
+            assertEquals("newUploadId", multipartUploadFile.getUploadId());
+            assertEquals(0, multipartUploadFile.getPartETags().size());
+        }
+        verify(mockDestination).abortMultipartUpload(mockRemotePath, "uploadId");
+    }
 
-        assertEquals(3, requests.size());
+    private static PartSummary createPartSummary(int partNumber, long size) {
+        PartSummary part = new PartSummary();
+        part.setPartNumber(partNumber);
+        part.setSize(size);
+        part.setETag("etag" + partNumber);
+        return part;
     }
 }
@@ -1,38 +1,271 @@
 package io.accelerate.tracking.sync.upload;
 
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import io.accelerate.tracking.sync.sync.LockIndex;
+import io.accelerate.tracking.sync.sync.destination.Destination;
 import io.accelerate.tracking.sync.sync.destination.DestinationOperationException;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.*;
 
 public class MultipartUploadFileUploadingStrategyTest {
 
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    @TempDir
+    private Path tempDir;
+
     @Test
-    public void getUploadingResultShouldReturnNullOnInterruptedException() throws DestinationOperationException, InterruptedException, ExecutionException {
+    public void getUploadingResultShouldThrowOnInterruptedException() throws InterruptedException, ExecutionException {
         Future future = mock(Future.class);
         when(future.get()).thenThrow(new InterruptedException());
-        Assertions.assertNull(MultipartUploadFileUploadingStrategy.getUploadingResult(future));
+        Assertions.assertThrows(DestinationOperationException.class, () -> MultipartUploadFileUploadingStrategy.getUploadingResult(future));
+        Assertions.assertTrue(Thread.interrupted());
     }
 
     @Test
-    public void getUploadingResultShouldReturnNullOnDestinationOperationException() throws DestinationOperationException, InterruptedException, ExecutionException {
+    public void getUploadingResultShouldRethrowDestinationOperationException() throws InterruptedException, ExecutionException {
         Future future = mock(Future.class);
         ExecutionException ex = mock(ExecutionException.class);
-        when(ex.getCause()).thenReturn(new DestinationOperationException(""));
+        DestinationOperationException cause = new DestinationOperationException("");
+        when(ex.getCause()).thenReturn(cause);
         when(future.get()).thenThrow(ex);
-        Assertions.assertNull(MultipartUploadFileUploadingStrategy.getUploadingResult(future));
+        Assertions.assertSame(cause, Assertions.assertThrows(DestinationOperationException.class,
+                () -> MultipartUploadFileUploadingStrategy.getUploadingResult(future)));
     }
-    
+
     @Test
-    public void getUploadingResultShouldReturnNullOnExecutionException() throws DestinationOperationException, InterruptedException, ExecutionException {
+    public void getUploadingResultShouldThrowOnExecutionException() throws InterruptedException, ExecutionException {
         Future future = mock(Future.class);
         ExecutionException ex = mock(ExecutionException.class);
         when(future.get()).thenThrow(ex);
-        Assertions.assertNull(MultipartUploadFileUploadingStrategy.getUploadingResult(future));
+        Assertions.assertThrows(DestinationOperationException.class, () -> MultipartUploadFileUploadingStrategy.getUploadingResult(future));
+    }
+
+    @Test
+    public void uploadShouldKeepPartsInFlightConcurrently() throws Exception {
+        int partsCount = 4;
+        File file = tempDir.resolve("file.bin").toFile();
+        Files.write(file.toPath(), new byte[partsCount * PART_SIZE]);
+
+        // Every part waits until all of them have been started, a sequential upload would never finish
+        CountDownLatch allPartsStarted = new CountDownLatch(partsCount);
+        Destination destination = mock(Destination.class);
+        when(destination.initUploading(anyString())).thenReturn("uploadId");
+        when(destination.createUploadPartRequest(anyString())).thenAnswer(invocation -> new UploadPartRequest());
+        when(destination.uploadMultiPart(any())).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            allPartsStarted.countDown();
+            if (!allPartsStarted.await(5, TimeUnit.SECONDS)) {
+                throw new DestinationOperationException("Parts were not uploaded concurrently");
+            }
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag" + request.getPartNumber());
+            return new MultipartUploadResult(request, result);
+        });
+
+        try (ConcurrentMultipartUploader uploader = new ConcurrentMultipartUploader(destination, partsCount)) {
+            new MultipartUploadFileUploadingStrategy(destination, uploader, partsCount).upload(file, "file.bin");
+        }
+
+        verify(destination).commitMultipartUpload(eq("file.bin"), argThat((List<PartETag> eTags) -> eTags.size() == partsCount), eq("uploadId"));
+    }
+
+    @Test
+    public void sharedUploaderShouldStayOpenBetweenFiles() throws Exception {
+        File first = tempDir.resolve("first.bin").toFile();
+        File second = tempDir.resolve("second.bin").toFile();
+        Files.write(first.toPath(), new byte[PART_SIZE]);
+        Files.write(second.toPath(), new byte[PART_SIZE]);
+
+        Destination destination = mock(Destination.class);
+        when(destination.initUploading(anyString())).thenReturn("uploadId");
+        when(destination.createUploadPartRequest(anyString())).thenAnswer(invocation -> new UploadPartRequest());
+        when(destination.uploadMultiPart(any())).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag");
+            return new MultipartUploadResult(request, result);
+        });
+
+        try (ConcurrentMultipartUploader uploader = new ConcurrentMultipartUploader(destination, 2)) {
+            new MultipartUploadFileUploadingStrategy(destination, uploader, 2).upload(first, "first.bin");
+            new MultipartUploadFileUploadingStrategy(destination, uploader, 2).upload(second, "second.bin");
+
+            Assertions.assertFalse(uploader.isClosed());
+        }
+        verify(destination).commitMultipartUpload(eq("first.bin"), any(), eq("uploadId"));
+        verify(destination).commitMultipartUpload(eq("second.bin"), any(), eq("uploadId"));
+    }
+
+    @Test
+    public void partThatStillFailsShouldFailTheFileWithoutCommit() throws Exception {
+        File file = tempDir.resolve("file.bin").toFile();
+        Files.write(file.toPath(), new byte[3 * PART_SIZE]);
+
+        Destination destination = mock(Destination.class);
+        when(destination.initUploading(anyString())).thenReturn("uploadId");
+        when(destination.createUploadPartRequest(anyString())).thenAnswer(invocation -> new UploadPartRequest());
+        when(destination.uploadMultiPart(any())).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            if (request.getPartNumber() == 2) {
+                throw new DestinationOperationException("Access Denied");
+            }
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag");
+            return new MultipartUploadResult(request, result);
+        });
+
+        try (ConcurrentMultipartUploader uploader = new ConcurrentMultipartUploader(destination, 1)) {
+            MultipartUploadFileUploadingStrategy strategy = new MultipartUploadFileUploadingStrategy(destination, uploader, 1);
+            Assertions.assertThrows(DestinationOperationException.class, () -> strategy.upload(file, "file.bin"));
+        }
+
+        verify(destination, times(2)).uploadMultiPart(any());
+        verify(destination, never()).commitMultipartUpload(anyString(), any(), anyString());
+    }
+
+    @Test
+    public void partRequestThatCannotBeCreatedShouldFailTheFileWithItsDestinationError() throws Exception {
+        File file = tempDir.resolve("file.bin").toFile();
+        Files.write(file.toPath(), new byte[3 * PART_SIZE]);
+
+        Destination destination = mock(Destination.class);
+        when(destination.initUploading(anyString())).thenReturn("uploadId");
+        DestinationOperationException failure = new DestinationOperationException("Cannot create request");
+        when(destination.createUploadPartRequest(anyString()))
+                .thenAnswer(invocation -> new UploadPartRequest())
+                .thenThrow(failure);
+        when(destination.uploadMultiPart(any())).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag");
+            return new MultipartUploadResult(request, result);
+        });
+        UploadStateRegistry registry = new UploadStateRegistry();
+
+        try (ConcurrentMultipartUploader uploader = new ConcurrentMultipartUploader(destination, 1)) {
+            MultipartUploadFileUploadingStrategy strategy = new MultipartUploadFileUploadingStrategy(destination, uploader, 1);
+            strategy.setUploadStateRegistry(registry);
+            DestinationOperationException thrown = Assertions.assertThrows(DestinationOperationException.class, () -> strategy.upload(file, "file.bin"));
+
+            Assertions.assertSame(failure, thrown);
+        }
+        Assertions.assertNull(registry.getUploadedParts("file.bin", file));
+        verify(destination, never()).commitMultipartUpload(anyString(), any(), anyString());
+    }
+
+    @Test
+    public void commitThatFailsOnceShouldBeRetried() throws Exception {
+        File file = tempDir.resolve("file.bin").toFile();
+        Files.write(file.toPath(), new byte[PART_SIZE]);
+
+        Destination destination = mock(Destination.class);
+        when(destination.initUploading(anyString()))
+                .thenThrow(new DestinationOperationException("Fail to initialize uploading process", createS3Exception(503, "SlowDown")))
+                .thenReturn("uploadId");
+        when(destination.createUploadPartRequest(anyString())).thenAnswer(invocation -> new UploadPartRequest());
+        when(destination.uploadMultiPart(any())).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag");
+            return new MultipartUploadResult(request, result);
+        });
+        doThrow(new DestinationOperationException("Failed to complete multipart request", createS3Exception(500, "InternalError")))
+                .doNothing()
+                .when(destination).commitMultipartUpload(anyString(), any(), anyString());
+
+        try (ConcurrentMultipartUploader uploader = new ConcurrentMultipartUploader(destination, 1)) {
+            uploader.setPartRetryPolicy(new PartRetryPolicy(3, Duration.ofMillis(1), Duration.ofMillis(1)));
+            new MultipartUploadFileUploadingStrategy(destination, uploader, 1).upload(file, "file.bin");
+        }
+
+        verify(destination, times(2)).initUploading("file.bin");
+        verify(destination, times(1)).uploadMultiPart(any());
+        verify(destination, times(2)).commitMultipartUpload(eq("file.bin"), any(), eq("uploadId"));
+    }
+
+    @Test
+    public void fileLockedAfterTheScanShouldNotBeCommitted() throws Exception {
+        File file = tempDir.resolve("file.bin").toFile();
+        Files.write(file.toPath(), new byte[PART_SIZE]);
+        Files.createFile(tempDir.resolve("file.bin.lock"));
+        LockIndex scanBeforeTheLock = mock(LockIndex.class);
+        when(scanBeforeTheLock.isLocked(any())).thenReturn(false);
+        Destination destination = createDestination();
+
+        try (ConcurrentMultipartUploader uploader = new ConcurrentMultipartUploader(destination, 1)) {
+            MultipartUploadFileUploadingStrategy strategy = new MultipartUploadFileUploadingStrategy(destination, uploader, 1);
+            strategy.setLockIndex(scanBeforeTheLock);
+            strategy.upload(file, "file.bin");
+        }
+
+        verify(destination, never()).commitMultipartUpload(anyString(), any(), anyString());
+    }
+
+    @Test
+    public void fileLockedWhileItsPartsUploadShouldNotBeCommitted() throws Exception {
+        File file = tempDir.resolve("file.bin").toFile();
+        Files.write(file.toPath(), new byte[PART_SIZE]);
+        Destination destination = createDestination();
+        doAnswer(invocation -> {
+            Files.createFile(tempDir.resolve("file.bin.lock"));
+            UploadPartRequest request = invocation.getArgument(0);
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag");
+            return new MultipartUploadResult(request, result);
+        }).when(destination).uploadMultiPart(any());
+        UploadStateRegistry registry = new UploadStateRegistry();
+
+        try (ConcurrentMultipartUploader uploader = new ConcurrentMultipartUploader(destination, 1)) {
+            MultipartUploadFileUploadingStrategy strategy = new MultipartUploadFileUploadingStrategy(destination, uploader, 1);
+            strategy.setUploadStateRegistry(registry);
+            strategy.upload(file, "file.bin");
+        }
+
+        verify(destination, never()).commitMultipartUpload(anyString(), any(), anyString());
+        Assertions.assertEquals(PART_SIZE, registry.getCommittedOffset("file.bin"));
+    }
+
+    private static Destination createDestination() throws Exception {
+        Destination destination = mock(Destination.class);
+        when(destination.initUploading(anyString())).thenReturn("uploadId");
+        when(destination.createUploadPartRequest(anyString())).thenAnswer(invocation -> new UploadPartRequest());
+        when(destination.uploadMultiPart(any())).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag("etag");
+            return new MultipartUploadResult(request, result);
+        });
+        return destination;
+    }
+
+    private static AmazonS3Exception createS3Exception(int statusCode, String errorCode) {
+        AmazonS3Exception exception = new AmazonS3Exception(errorCode);
+        exception.setStatusCode(statusCode);
+        exception.setErrorCode(errorCode);
+        return exception;
     }
 }
@@ -0,0 +1,92 @@
+package io.accelerate.tracking.sync.upload;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import io.accelerate.tracking.sync.sync.destination.DestinationOperationException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PartRetryPolicyTest {
+
+    private final PartRetryPolicy policy = new PartRetryPolicy(5, Duration.ofMillis(100), Duration.ofMillis(1000));
+
+    @Test
+    public void serverErrorsThrottlingAndCorruptedBodiesShouldBeRetryable() {
+        Assertions.assertTrue(policy.isRetryable(wrap(createS3Exception(500, "InternalError"))));
+        Assertions.assertTrue(policy.isRetryable(wrap(createS3Exception(503, "SlowDown"))));
+        Assertions.assertTrue(policy.isRetryable(wrap(createS3Exception(400, "RequestTimeout"))));
+        Assertions.assertTrue(policy.isRetryable(wrap(createS3Exception(400, "BadDigest"))));
+        Assertions.assertTrue(policy.isRetryable(new SdkClientException("Connection reset")));
+    }
+
+    @Test
+    public void otherErrorsOfTheDestinationShouldBeFatal() {
+        Assertions.assertFalse(policy.isRetryable(wrap(createS3Exception(403, "AccessDenied"))));
+        Assertions.assertFalse(policy.isRetryable(wrap(createS3Exception(404, "NoSuchUpload"))));
+        Assertions.assertFalse(policy.isRetryable(new DestinationOperationException("No cause")));
+        Assertions.assertFalse(policy.isRetryable(new IllegalStateException()));
+    }
+
+    @Test
+    public void delayShouldBeJitteredBelowTheExponentialDelay() {
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertTrue(policy.getDelay(2).toMillis() <= 100);
+            Assertions.assertTrue(policy.getDelay(4).toMillis() <= 400);
+            Assertions.assertTrue(policy.getDelay(20).toMillis() <= 1000);
+        }
+    }
+
+    @Test
+    public void callShouldBeMadeAgainUntilItSucceeds() throws Exception {
+        PartRetryPolicy fastPolicy = new PartRetryPolicy(3, Duration.ofMillis(1), Duration.ofMillis(1));
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = fastPolicy.call("Commit", () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw wrap(createS3Exception(503, "SlowDown"));
+            }
+            return "done";
+        });
+
+        Assertions.assertEquals("done", result);
+        Assertions.assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void callShouldNotBeMadeAgainAfterAFatalFailureOrItsLastAttempt() {
+        PartRetryPolicy fastPolicy = new PartRetryPolicy(3, Duration.ofMillis(1), Duration.ofMillis(1));
+        AtomicInteger calls = new AtomicInteger();
+
+        Assertions.assertThrows(DestinationOperationException.class, () -> fastPolicy.call("Commit", () -> {
+            calls.incrementAndGet();
+            throw wrap(createS3Exception(404, "NoSuchUpload"));
+        }));
+        Assertions.assertEquals(1, calls.get());
+
+        calls.set(0);
+        Assertions.assertThrows(DestinationOperationException.class, () -> fastPolicy.call("Commit", () -> {
+            calls.incrementAndGet();
+            throw wrap(createS3Exception(500, "InternalError"));
+        }));
+        Assertions.assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void constructorShouldRejectInvalidAttempts() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new PartRetryPolicy(0, Duration.ZERO, Duration.ZERO));
+    }
+
+    private static DestinationOperationException wrap(Exception cause) {
+        return new DestinationOperationException("Fail to upload multipart", cause);
+    }
+
+    private static AmazonS3Exception createS3Exception(int statusCode, String errorCode) {
+        AmazonS3Exception exception = new AmazonS3Exception(errorCode);
+        exception.setStatusCode(statusCode);
+        exception.setErrorCode(errorCode);
+        return exception;
+    }
+}
@@ -0,0 +1,89 @@
+package io.accelerate.tracking.sync.upload;
+
+import com.amazonaws.services.s3.model.PartSummary;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+public class PartSizePolicyTest {
+
+    private static final int MB = 1024 * 1024;
+
+    @Test
+    public void fixedShouldRejectPartsBelowTheMinimumSize() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> PartSizePolicy.fixed(MB));
+    }
+
+    @Test
+    public void growingShouldDoubleThePartSizeAfterEachStep() {
+        PartSizePolicy policy = PartSizePolicy.growing(5 * MB, 1000);
+
+        Assertions.assertEquals(5 * MB, policy.getPartSize(1));
+        Assertions.assertEquals(5 * MB, policy.getPartSize(1000));
+        Assertions.assertEquals(10 * MB, policy.getPartSize(1001));
+        Assertions.assertEquals(20 * MB, policy.getPartSize(2001));
+        Assertions.assertEquals(PartSizePolicy.MAXIMUM_PART_SIZE, policy.getPartSize(PartSizePolicy.MAXIMUM_PART_COUNT));
+    }
+
+    @Test
+    public void defaultPolicyShouldFitFilesAboveATerabyteInTheMaximumPartCount() {
+        PartSizePolicy policy = PartSizePolicy.defaultPolicy();
+        long maximumFileSize = 0;
+        for (int partNumber = 1; partNumber <= PartSizePolicy.MAXIMUM_PART_COUNT; partNumber++) {
+            maximumFileSize += policy.getPartSize(partNumber);
+        }
+
+        Assertions.assertEquals(5 * MB, policy.getPartSize(1));
+        Assertions.assertTrue(maximumFileSize > 1024L * 1024 * MB);
+    }
+
+    @Test
+    public void forExpectedFileSizeShouldFitTheFileInTheMaximumPartCount() {
+        long expectedFileSize = 100L * 1024 * MB;
+
+        int partSize = PartSizePolicy.forExpectedFileSize(expectedFileSize).getPartSize(1);
+
+        Assertions.assertEquals(11 * MB, partSize);
+        Assertions.assertEquals(5 * MB, PartSizePolicy.forExpectedFileSize(10 * MB).getPartSize(1));
+    }
+
+    @Test
+    public void uploadedPartsPlannedWithTheConfiguredPolicyShouldKeepIt() {
+        PartSizePolicy configured = PartSizePolicy.fixed(5 * MB);
+        PartStates partStates = createPartStates(createPart(1, 5 * MB), createPart(2, 3 * MB));
+
+        Assertions.assertSame(configured, MultipartUploadHelper.getPartSizePolicy(partStates, configured));
+    }
+
+    @Test
+    public void uploadedPartsPlannedWithAnotherPolicyShouldKeepTheirSizes() {
+        PartSizePolicy configured = PartSizePolicy.fixed(8 * MB);
+        PartStates partStates = createPartStates(createPart(1, 5 * MB), createPart(2, 5 * MB));
+
+        PartSizePolicy policy = MultipartUploadHelper.getPartSizePolicy(partStates, configured);
+
+        Assertions.assertEquals(5 * MB, policy.getPartSize(1));
+        Assertions.assertEquals(5 * MB, policy.getPartSize(2));
+        Assertions.assertEquals(8 * MB, policy.getPartSize(3));
+    }
+
+    @Test
+    public void missingPartsPlannedWithAnotherPolicyShouldNotBePlanned() {
+        PartSizePolicy configured = PartSizePolicy.fixed(8 * MB);
+        PartStates partStates = createPartStates(createPart(1, 5 * MB), createPart(3, 5 * MB));
+
+        Assertions.assertNull(MultipartUploadHelper.getPartSizePolicy(partStates, configured));
+    }
+
+    private static PartStates createPartStates(PartSummary... parts) {
+        return PartStates.fromParts(Arrays.asList(parts).iterator());
+    }
+
+    private static PartSummary createPart(int partNumber, long size) {
+        PartSummary part = new PartSummary();
+        part.setPartNumber(partNumber);
+        part.setSize(size);
+        return part;
+    }
+}
@@ -0,0 +1,100 @@
+package io.accelerate.tracking.sync.upload;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+public class PartSlicerTest {
+
+    private final PartSlicer slicer = new PartSlicer(10);
+
+    @Test
+    public void constructorShouldThrowExceptionOnInvalidPartSize() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new PartSlicer(0));
+    }
+
+    @Test
+    public void sliceShouldSkipTheLastPartWhileWritingIsNotFinished() {
+        List<FilePart> parts = slicer.slice(0, 1, 25, false).collect(Collectors.toList());
+
+        Assertions.assertEquals(2, parts.size());
+        assertPart(parts.get(0), 1, 0, 10, false);
+        assertPart(parts.get(1), 2, 10, 10, false);
+    }
+
+    @Test
+    public void sliceShouldIncludeTheLastPartWhenWritingIsFinished() {
+        List<FilePart> parts = slicer.slice(0, 1, 25, true).collect(Collectors.toList());
+
+        Assertions.assertEquals(3, parts.size());
+        assertPart(parts.get(2), 3, 20, 5, true);
+    }
+
+    @Test
+    public void sliceShouldStartFromTheUploadedOffset() {
+        List<FilePart> parts = slicer.slice(20, 3, 40, true).collect(Collectors.toList());
+
+        Assertions.assertEquals(2, parts.size());
+        assertPart(parts.get(0), 3, 20, 10, false);
+        assertPart(parts.get(1), 4, 30, 10, false);
+    }
+
+    @Test
+    public void sliceShouldReturnNothingWhenFileIsShorterThanOffset() {
+        Assertions.assertEquals(0, slicer.slice(30, 4, 20, true).count());
+    }
+
+    @Test
+    public void partAtShouldDescribeCompletePart() {
+        assertPart(slicer.partAt(3), 3, 20, 10, false);
+    }
+
+    @Test
+    public void partAtShouldNotOverflowForLargeFiles() {
+        PartSlicer largeSlicer = new PartSlicer(5 * 1024 * 1024);
+        Assertions.assertEquals(1000L * 5 * 1024 * 1024, largeSlicer.partAt(1001).getOffset());
+    }
+
+    @Test
+    public void sliceShouldFollowThePartSizePolicy() {
+        PartSlicer growingSlicer = new PartSlicer(partNumber -> partNumber <= 2 ? 10 : 20);
+
+        List<FilePart> parts = growingSlicer.slice(10, 2, 65, true).collect(Collectors.toList());
+
+        Assertions.assertEquals(3, parts.size());
+        assertPart(parts.get(0), 2, 10, 10, false);
+        assertPart(parts.get(1), 3, 20, 20, false);
+        assertPart(parts.get(2), 4, 40, 20, false);
+    }
+
+    @Test
+    public void partAtShouldAddUpTheSizesOfThePreviousParts() {
+        PartSlicer growingSlicer = new PartSlicer(partNumber -> partNumber <= 2 ? 10 : 20);
+
+        assertPart(growingSlicer.partAt(4), 4, 40, 20, false);
+    }
+
+    @Test
+    public void partAtShouldAskThePolicyOncePerPart() {
+        AtomicInteger calls = new AtomicInteger();
+        PartSlicer countingSlicer = new PartSlicer(partNumber -> {
+            calls.incrementAndGet();
+            return 10;
+        });
+
+        assertPart(countingSlicer.partAt(100), 100, 990, 10, false);
+        assertPart(countingSlicer.partAt(3), 3, 20, 10, false);
+        assertPart(countingSlicer.partAt(100), 100, 990, 10, false);
+        Assertions.assertEquals(99 + 3, calls.get());
+    }
+
+    private static void assertPart(FilePart part, int partNumber, long offset, int length, boolean lastPart) {
+        Assertions.assertEquals(partNumber, part.getPartNumber());
+        Assertions.assertEquals(offset, part.getOffset());
+        Assertions.assertEquals(length, part.getLength());
+        Assertions.assertEquals(lastPart, part.isLastPart());
+    }
+}
@@ -0,0 +1,83 @@
+package io.accelerate.tracking.sync.upload;
+
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PartSummary;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+public class PartStatesTest {
+
+    @Test
+    public void fromPartsShouldFindMissingPartsLastPartAndUploadedSize() {
+        PartStates partStates = PartStates.fromParts(createParts(1, 3, 4, 7));
+
+        Assertions.assertArrayEquals(new int[]{2, 5, 6}, partStates.getMissingPartNumbers());
+        Assertions.assertEquals(7, partStates.getLastPartNumber());
+        Assertions.assertEquals(40, partStates.getUploadedSize());
+    }
+
+    @Test
+    public void emptyStatesShouldHaveNoParts() {
+        PartStates partStates = PartStates.fromParts(Collections.emptyIterator());
+
+        Assertions.assertTrue(partStates.isEmpty());
+        Assertions.assertEquals(0, partStates.getLastPartNumber());
+        Assertions.assertEquals(0, partStates.getMissingPartNumbers().length);
+        Assertions.assertTrue(partStates.toPartETags().isEmpty());
+    }
+
+    @Test
+    public void confirmShouldReplaceAPartConfirmedTwice() {
+        PartStates partStates = new PartStates();
+        partStates.confirm(2, "old", 10);
+        partStates.confirm(2, "new", 15);
+
+        Assertions.assertEquals(15, partStates.getUploadedSize());
+        Assertions.assertEquals("new", partStates.toPartETags().get(0).getETag());
+    }
+
+    @Test
+    public void toPartETagsShouldBeOrderedByPartNumberForLargeUploads() {
+        PartStates partStates = new PartStates();
+        for (int partNumber = 10000; partNumber >= 1; partNumber--) {
+            partStates.confirm(partNumber, "etag" + partNumber, 5);
+        }
+
+        List<PartETag> partETags = partStates.toPartETags();
+
+        Assertions.assertEquals(10000, partETags.size());
+        Assertions.assertEquals(1, partETags.get(0).getPartNumber());
+        Assertions.assertEquals("etag10000", partETags.get(9999).getETag());
+        Assertions.assertEquals(0, partStates.getMissingPartNumbers().length);
+        Assertions.assertEquals(50000, partStates.getUploadedSize());
+    }
+
+    @Test
+    public void copyShouldNotSeeThePartsConfirmedAfterIt() {
+        PartStates partStates = PartStates.fromParts(createParts(1, 2));
+        PartStates copy = partStates.copy();
+        copy.confirm(3, "etag3", 10);
+
+        Assertions.assertEquals(2, partStates.getLastPartNumber());
+        Assertions.assertEquals(20, partStates.getUploadedSize());
+        Assertions.assertEquals(3, copy.getLastPartNumber());
+        Assertions.assertEquals(30, copy.getUploadedSize());
+    }
+
+    private static Iterator<PartSummary> createParts(int... partNumbers) {
+        List<PartSummary> parts = new ArrayList<>();
+        for (int partNumber : partNumbers) {
+            PartSummary part = new PartSummary();
+            part.setPartNumber(partNumber);
+            part.setETag("etag" + partNumber);
+            part.setSize(10);
+            parts.add(part);
+        }
+        return parts.iterator();
+    }
+}
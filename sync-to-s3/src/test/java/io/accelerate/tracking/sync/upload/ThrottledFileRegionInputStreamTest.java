@@ -0,0 +1,50 @@
+package io.accelerate.tracking.sync.upload;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class ThrottledFileRegionInputStreamTest {
+
+    private File file;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        file = File.createTempFile("file-region", ".bin");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "0123456789".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void readShouldStopAtTheEndOfTheRegion() throws IOException {
+        try (InputStream in = new ThrottledFileRegionInputStream(file, 2, 5, new UploadRateLimiter())) {
+            Assertions.assertEquals("23456", new String(in.readAllBytes(), StandardCharsets.US_ASCII));
+            Assertions.assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void resetShouldReadTheRegionAgain() throws IOException {
+        try (InputStream in = new ThrottledFileRegionInputStream(file, 2, 5, new UploadRateLimiter())) {
+            Assertions.assertTrue(in.markSupported());
+            in.mark(0);
+            Assertions.assertEquals('2', in.read());
+            Assertions.assertEquals('3', in.read());
+            in.reset();
+            Assertions.assertEquals("23456", new String(in.readAllBytes(), StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    public void regionBeyondTheFileShouldEndWithTheFile() throws IOException {
+        try (InputStream in = new ThrottledFileRegionInputStream(file, 8, 5, new UploadRateLimiter())) {
+            Assertions.assertEquals("89", new String(in.readAllBytes(), StandardCharsets.US_ASCII));
+        }
+    }
+}
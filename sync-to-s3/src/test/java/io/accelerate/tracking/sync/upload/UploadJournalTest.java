@@ -0,0 +1,113 @@
+package io.accelerate.tracking.sync.upload;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class UploadJournalTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    public void readShouldReturnAppendedRecords() throws Exception {
+        Path journalPath = tempDir.resolve("journal");
+        try (UploadJournal journal = UploadJournal.rewrite(journalPath, Collections.emptyList())) {
+            journal.append(UploadJournal.Record.uploadStarted("file.bin", "uploadId"), false);
+            journal.append(UploadJournal.Record.partUploaded("file.bin", 1, "etag1", 10), false);
+            journal.append(UploadJournal.Record.fileUploaded("file.bin", 10, 1234), true);
+        }
+
+        List<UploadJournal.Record> records = UploadJournal.read(journalPath);
+
+        Assertions.assertEquals(3, records.size());
+        Assertions.assertEquals("uploadId", records.get(0).uploadId);
+        Assertions.assertEquals("etag1", records.get(1).eTag);
+        Assertions.assertEquals(1234, records.get(2).lastModified);
+    }
+
+    @Test
+    public void readShouldStopAtTornRecord() throws Exception {
+        Path journalPath = tempDir.resolve("journal");
+        UploadJournal.rewrite(journalPath, Arrays.asList(
+                UploadJournal.Record.uploadStarted("file.bin", "uploadId"),
+                UploadJournal.Record.partUploaded("file.bin", 1, "etag1", 10)
+        )).close();
+        long validLength = Files.size(journalPath);
+        Files.write(journalPath, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        Assertions.assertEquals(2, UploadJournal.read(journalPath).size());
+        Files.write(journalPath, Arrays.copyOf(Files.readAllBytes(journalPath), (int) validLength - 3));
+        Assertions.assertEquals(1, UploadJournal.read(journalPath).size());
+    }
+
+    @Test
+    public void registryShouldBeRebuiltFromJournal() throws Exception {
+        Path journalPath = tempDir.resolve("journal");
+        File file = tempDir.resolve("file.bin").toFile();
+        Files.write(file.toPath(), new byte[20]);
+
+        try (UploadStateRegistry registry = UploadStateRegistry.open(journalPath)) {
+            registry.uploadStarted("file.bin", "uploadId");
+            registry.partUploaded("file.bin", 1, "etag1", 20);
+            registry.fileUploaded("file.bin", 20, file.lastModified());
+            registry.uploadStarted("interrupted.bin", "otherId");
+            registry.partUploaded("interrupted.bin", 1, "etag1", 20);
+        }
+
+        try (UploadStateRegistry registry = UploadStateRegistry.open(journalPath)) {
+            Assertions.assertEquals("uploadId", registry.getUploadedParts("file.bin", file).getUploadId());
+            Assertions.assertNull(registry.getUploadedParts("interrupted.bin", file));
+        }
+        // The journal was compacted to the settled upload
+        Assertions.assertEquals(3, UploadJournal.read(journalPath).size());
+    }
+
+    @Test
+    public void forgottenUploadShouldNotBeRebuilt() throws Exception {
+        Path journalPath = tempDir.resolve("journal");
+        File file = tempDir.resolve("file.bin").toFile();
+        Files.write(file.toPath(), new byte[20]);
+
+        try (UploadStateRegistry registry = UploadStateRegistry.open(journalPath)) {
+            registry.uploadStarted("file.bin", "uploadId");
+            registry.fileUploaded("file.bin", 20, file.lastModified());
+            registry.forget("file.bin");
+        }
+
+        try (UploadStateRegistry registry = UploadStateRegistry.open(journalPath)) {
+            Assertions.assertNull(registry.getUploadedParts("file.bin", file));
+        }
+    }
+
+    @Test
+    public void journalShouldBeCompactedWhenItPassesTheCompactionSize() throws Exception {
+        Path journalPath = tempDir.resolve("journal");
+        File file = tempDir.resolve("file.bin").toFile();
+        Files.write(file.toPath(), new byte[20]);
+
+        try (UploadStateRegistry registry = UploadStateRegistry.open(journalPath, 200)) {
+            registry.uploadStarted("file.bin", "uploadId");
+            registry.partUploaded("file.bin", 1, "etag1", 20);
+            registry.fileUploaded("file.bin", 20, file.lastModified());
+            for (int i = 0; i < 100; i++) {
+                registry.uploadStarted("temporary.bin", "temporaryId" + i);
+                registry.forget("temporary.bin");
+            }
+            Assertions.assertTrue(UploadJournal.read(journalPath).size() < 20);
+        }
+
+        try (UploadStateRegistry registry = UploadStateRegistry.open(journalPath)) {
+            Assertions.assertEquals("uploadId", registry.getUploadedParts("file.bin", file).getUploadId());
+            Assertions.assertNull(registry.getUploadedParts("temporary.bin", file));
+        }
+    }
+}
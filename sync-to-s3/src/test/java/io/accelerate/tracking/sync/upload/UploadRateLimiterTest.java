@@ -0,0 +1,49 @@
+package io.accelerate.tracking.sync.upload;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class UploadRateLimiterTest {
+
+    @Test
+    public void unlimitedShouldNeverWait() throws InterruptedException {
+        UploadRateLimiter limiter = new UploadRateLimiter();
+
+        long start = System.nanoTime();
+        limiter.acquire(100 * 1024 * 1024);
+
+        Assertions.assertFalse(limiter.isLimited());
+        Assertions.assertTrue(System.nanoTime() - start < 50_000_000L);
+    }
+
+    @Test
+    public void acquireShouldSpreadTheBytesOverTime() throws InterruptedException {
+        UploadRateLimiter limiter = new UploadRateLimiter(100 * 1024);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            limiter.acquire(1024);
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // 20 KB at 100 KB/s, less the 5 KB burst
+        Assertions.assertTrue(elapsedMillis >= 140, "Took " + elapsedMillis + " ms");
+    }
+
+    @Test
+    public void limitShouldBeChangedWhileUploading() throws InterruptedException {
+        UploadRateLimiter limiter = new UploadRateLimiter(1024);
+        limiter.setBytesPerSecond(0);
+
+        long start = System.nanoTime();
+        limiter.acquire(10 * 1024);
+
+        Assertions.assertEquals(0, limiter.getBytesPerSecond());
+        Assertions.assertTrue(System.nanoTime() - start < 50_000_000L);
+    }
+
+    @Test
+    public void negativeLimitShouldBeRejected() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new UploadRateLimiter(-1));
+    }
+}
@@ -0,0 +1,107 @@
+package io.accelerate.tracking.sync.upload;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class UploadStateRegistryTest {
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    public void getUploadedPartsShouldReturnConfirmedParts() throws Exception {
+        File file = createFile(20);
+        UploadStateRegistry registry = new UploadStateRegistry();
+        registry.uploadStarted("file.bin", "uploadId");
+        registry.partUploaded("file.bin", 2, "etag2", 10);
+        registry.partUploaded("file.bin", 1, "etag1", 10);
+        registry.fileUploaded("file.bin", 20, file.lastModified());
+
+        UploadedParts uploadedParts = registry.getUploadedParts("file.bin", file);
+
+        Assertions.assertEquals("uploadId", uploadedParts.getUploadId());
+        Assertions.assertEquals(2, uploadedParts.getLastPartNumber());
+        Assertions.assertEquals(20, uploadedParts.getUploadedSize());
+        Assertions.assertEquals("etag1", uploadedParts.getPartStates().toPartETags().get(0).getETag());
+        Assertions.assertEquals("etag2", uploadedParts.getPartStates().toPartETags().get(1).getETag());
+    }
+
+    @Test
+    public void getUploadedPartsShouldAcceptGrownFile() throws Exception {
+        File file = createFile(20);
+        UploadStateRegistry registry = new UploadStateRegistry();
+        registry.uploadStarted("file.bin", "uploadId");
+        registry.fileUploaded("file.bin", 20, file.lastModified());
+        Files.write(file.toPath(), new byte[10], StandardOpenOption.APPEND);
+
+        Assertions.assertNotNull(registry.getUploadedParts("file.bin", file));
+    }
+
+    @Test
+    public void getUploadedPartsShouldForgetStateOfReplacedFile() throws Exception {
+        File file = createFile(20);
+        UploadStateRegistry registry = new UploadStateRegistry();
+        registry.uploadStarted("file.bin", "uploadId");
+        registry.partUploaded("file.bin", 1, "etag1", 20);
+        registry.fileUploaded("file.bin", 20, file.lastModified());
+        Files.write(file.toPath(), new byte[5]);
+
+        Assertions.assertNull(registry.getUploadedParts("file.bin", file));
+    }
+
+    @Test
+    public void getUploadedPartsShouldForgetStateOfModifiedFileOfSameLength() throws Exception {
+        File file = createFile(20);
+        UploadStateRegistry registry = new UploadStateRegistry();
+        registry.uploadStarted("file.bin", "uploadId");
+        registry.fileUploaded("file.bin", 20, file.lastModified());
+        Assertions.assertTrue(file.setLastModified(file.lastModified() + 5000));
+
+        Assertions.assertNull(registry.getUploadedParts("file.bin", file));
+    }
+
+    @Test
+    public void getUploadedPartsShouldReturnNullOnceForgotten() throws Exception {
+        File file = createFile(20);
+        UploadStateRegistry registry = new UploadStateRegistry();
+        registry.uploadStarted("file.bin", "uploadId");
+        registry.forget("file.bin");
+
+        Assertions.assertNull(registry.getUploadedParts("file.bin", file));
+    }
+
+    @Test
+    public void committedOffsetShouldCoverConfirmedParts() {
+        UploadStateRegistry registry = new UploadStateRegistry();
+        Assertions.assertEquals(0, registry.getCommittedOffset("file.bin"));
+        Assertions.assertEquals(1, registry.getNextPartNumber("file.bin"));
+
+        registry.uploadStarted("file.bin", "uploadId");
+        registry.partUploaded("file.bin", 1, "etag1", 10);
+        registry.partUploaded("file.bin", 2, "etag2", 10);
+
+        Assertions.assertEquals(20, registry.getCommittedOffset("file.bin"));
+        Assertions.assertEquals(3, registry.getNextPartNumber("file.bin"));
+    }
+
+    @Test
+    public void closedRegistryShouldNotBeUsed() throws Exception {
+        UploadStateRegistry registry = UploadStateRegistry.open(tempDir.resolve("journal"));
+        registry.close();
+
+        Assertions.assertThrows(IllegalStateException.class, () -> registry.uploadStarted("file.bin", "uploadId"));
+        Assertions.assertThrows(IllegalStateException.class, () -> registry.getCommittedOffset("file.bin"));
+    }
+
+    private File createFile(int length) throws Exception {
+        File file = tempDir.resolve("file.bin").toFile();
+        Files.write(file.toPath(), new byte[length]);
+        return file;
+    }
+}